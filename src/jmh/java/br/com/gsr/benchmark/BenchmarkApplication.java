@@ -0,0 +1,48 @@
+package br.com.gsr.benchmark;
+
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import br.com.gsr.libraryapi.api.mapper.BookMapper;
+import br.com.gsr.libraryapi.api.mapper.LoanMapper;
+import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.api.model.repository.BookRepository;
+import br.com.gsr.libraryapi.config.OutboxProperties;
+import br.com.gsr.libraryapi.service.impl.BookSearchServiceImpl;
+import br.com.gsr.libraryapi.service.impl.BookServiceImpl;
+import br.com.gsr.libraryapi.service.impl.BookSuggestServiceImpl;
+import br.com.gsr.libraryapi.service.impl.LoanServiceImpl;
+import br.com.gsr.libraryapi.service.impl.OutboxServiceImpl;
+import br.com.gsr.libraryapi.service.impl.TableChangeServiceImpl;
+
+/**
+ * Service and repository layer of the application without the web stack,
+ * the scheduler or the startup runner.
+ *
+ * Kept outside br.com.gsr.libraryapi, so the component scan of
+ * {@link br.com.gsr.libraryapi.LibraryApiApplication} does not pick it up
+ * when the benchmarks boot the whole application.
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@EntityScan(basePackageClasses = Book.class)
+@EnableJpaRepositories(basePackageClasses = BookRepository.class)
+@Import({ BookServiceImpl.class, BookSearchServiceImpl.class, BookSuggestServiceImpl.class,
+		LoanServiceImpl.class, OutboxServiceImpl.class, OutboxProperties.class, TableChangeServiceImpl.class })
+public class BenchmarkApplication {
+
+	@Bean
+	public BookMapper bookMapper() {
+		return new BookMapper();
+	}
+
+	@Bean
+	public LoanMapper loanMapper(BookMapper bookMapper) {
+		return new LoanMapper(bookMapper);
+	}
+
+}
@@ -0,0 +1,65 @@
+package br.com.gsr.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.service.BookService;
+
+/**
+ * Inserts {@link #CHUNK} new books per operation, either as one {@link BookService#saveAll}
+ * chunk the way {@code POST /api/books/bulk} does, or one {@link BookService#save} at a time
+ * the way a client looping over {@code POST /api/books} does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class BookBulkInsertBenchmark {
+
+	static final int CHUNK = 1_000;
+
+	BookService bookService;
+	long counter;
+
+	@Setup
+	public void setUp(SeededDatabase database) {
+		bookService = database.getBean(BookService.class);
+	}
+
+	@Benchmark
+	public List<Book> saveAll() {
+		return bookService.saveAll(nextChunk());
+	}
+
+	@Benchmark
+	public List<Book> saveOneByOne() {
+		List<Book> chunk = nextChunk();
+		chunk.forEach(bookService::save);
+		return chunk;
+	}
+
+	private List<Book> nextChunk() {
+		List<Book> chunk = new ArrayList<>(CHUNK);
+		for (int i = 0; i < CHUNK; i++) {
+			long n = ++counter;
+			chunk.add(Book.builder().title("Bulk " + n).author("Bulk author").isbn("bulk-" + n).build());
+		}
+		return chunk;
+	}
+
+}
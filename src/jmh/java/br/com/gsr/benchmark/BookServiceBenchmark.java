@@ -0,0 +1,62 @@
+package br.com.gsr.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+
+import br.com.gsr.libraryapi.api.dto.BookDTO;
+import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.service.BookService;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookServiceBenchmark {
+
+	BookService bookService;
+	PageRequest pageRequest = PageRequest.of(0, 20);
+	long counter;
+
+	@Setup
+	public void setUp(SeededDatabase database) {
+		bookService = database.getBean(BookService.class);
+	}
+
+	@Benchmark
+	public Page<BookDTO> findByTitlePrefix() {
+		Book filter = Book.builder().title("title " + (++counter % 1_000)).build();
+		return bookService.findDTO(filter, pageRequest);
+	}
+
+	@Benchmark
+	public Page<BookDTO> findByAuthor() {
+		Book filter = Book.builder().author("Author " + (++counter % 5_000)).build();
+		return bookService.findDTO(filter, pageRequest);
+	}
+
+	@Benchmark
+	public Page<BookDTO> findAllPage() {
+		return bookService.findDTO(new Book(), pageRequest);
+	}
+
+	@Benchmark
+	public Slice<BookDTO> findAllSlice() {
+		return bookService.findDTOSlice(new Book(), pageRequest);
+	}
+
+}
@@ -0,0 +1,100 @@
+package br.com.gsr.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.gsr.libraryapi.api.dto.BookDTO;
+import br.com.gsr.libraryapi.api.dto.LoanDTO;
+import br.com.gsr.libraryapi.api.mapper.BookMapper;
+import br.com.gsr.libraryapi.api.mapper.LoanMapper;
+import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.api.model.entity.Loan;
+
+/**
+ * Maps one page of rows the way the controllers do, comparing the reflective
+ * ModelMapper path with the hand-written mappers. Each operation is a whole page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DtoMappingBenchmark {
+
+	@Param({ "1000" })
+	int pageSize;
+
+	ModelMapper modelMapper;
+	BookMapper bookMapper;
+	LoanMapper loanMapper;
+
+	List<Book> books;
+	List<Loan> loans;
+
+	@Setup
+	public void setUp() {
+		modelMapper = new ModelMapper();
+		bookMapper = new BookMapper();
+		loanMapper = new LoanMapper(bookMapper);
+
+		books = new ArrayList<>(pageSize);
+		loans = new ArrayList<>(pageSize);
+		for (long i = 0; i < pageSize; i++) {
+			Book book = Book.builder().id(i).isbn("isbn-" + i).title("Title " + i).author("Author " + i).build();
+			books.add(book);
+			loans.add(Loan.builder()
+					.id(i)
+					.book(book)
+					.customer("Customer " + i)
+					.customerEmail("customer" + i + "@email.com")
+					.loanDate(LocalDate.now())
+					.build());
+		}
+		// first ModelMapper call builds and caches the type maps
+		modelMapper.map(books.get(0), BookDTO.class);
+		modelMapper.map(loans.get(0), LoanDTO.class);
+	}
+
+	@Benchmark
+	public List<BookDTO> booksModelMapper() {
+		return books.stream().map(book -> modelMapper.map(book, BookDTO.class)).collect(Collectors.toList());
+	}
+
+	@Benchmark
+	public List<BookDTO> booksMapper() {
+		return books.stream().map(bookMapper::toDTO).collect(Collectors.toList());
+	}
+
+	@Benchmark
+	public List<LoanDTO> loansModelMapper() {
+		return loans.stream().map(loan -> {
+			BookDTO bookDTO = modelMapper.map(loan.getBook(), BookDTO.class);
+			LoanDTO loanDTO = modelMapper.map(loan, LoanDTO.class);
+			loanDTO.setBook(bookDTO);
+			return loanDTO;
+		}).collect(Collectors.toList());
+	}
+
+	@Benchmark
+	public List<LoanDTO> loansMapper() {
+		return loans.stream().map(loanMapper::toDTO).collect(Collectors.toList());
+	}
+
+}
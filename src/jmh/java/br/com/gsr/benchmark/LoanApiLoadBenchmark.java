@@ -0,0 +1,212 @@
+package br.com.gsr.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import br.com.gsr.libraryapi.LibraryApiApplication;
+
+/**
+ * Closed-loop load test of GET and POST /api/loans and GET /api/loans/stream over HTTP,
+ * once with platform threads and once with {@code application.threads.virtual} on. Each mode boots the whole
+ * application on a random port against its own in-memory H2, then keeps {@code clients}
+ * requests in flight for {@code seconds} and prints throughput and latency percentiles.
+ *
+ * Not a JMH benchmark: JMH measures the calling thread, and here the contention to
+ * measure is on the server side:
+ *
+ * mvn -Pbenchmark verify -Djmh.skip=true -Dload.skip=false
+ *
+ * Options are system properties, passed through -Dload.args="-Dload.clients=2000 ...".
+ * Every request still needs one of the 10 Hikari connections, so the pool bounds
+ * throughput in both modes; what changes is how many requests Tomcat accepts while
+ * waiting for one.
+ */
+public class LoanApiLoadBenchmark {
+
+	private static final int CLIENTS = Integer.getInteger("load.clients", 1_000);
+	private static final int WARMUP_SECONDS = Integer.getInteger("load.warmup", 10);
+	private static final int SECONDS = Integer.getInteger("load.seconds", 30);
+	private static final int LOANS = Integer.getInteger("load.loans", 100_000);
+	private static final int FREE_BOOKS = Integer.getInteger("load.free-books", 500_000);
+	private static final int LOANS_PER_BOOK = 10;
+	private static final int BATCH_SIZE = 10_000;
+
+	public static void main(String[] args) throws Exception {
+		System.setProperty("spring.devtools.restart.enabled", "false");
+		List<String> results = new ArrayList<>();
+		for (String mode : System.getProperty("load.modes", "platform,virtual").split(",")) {
+			results.addAll(run("virtual".equals(mode.trim())));
+		}
+		System.out.println();
+		System.out.printf("%d clients, %ds per endpoint, %d seeded loans, Java %s%n", CLIENTS, SECONDS, LOANS,
+				System.getProperty("java.version"));
+		System.out.println(
+				"mode     endpoint   requests   errors      req/s    p50 ms    p99 ms  p99.9 ms    max ms");
+		results.forEach(System.out::println);
+		System.exit(0);
+	}
+
+	private static List<String> run(boolean virtual) throws InterruptedException {
+		String mode = virtual ? "virtual" : "platform";
+		// arguments rather than default properties, which application.properties would override
+		ConfigurableApplicationContext context = new SpringApplicationBuilder(LibraryApiApplication.class).run(
+				"--server.port=0",
+				"--spring.datasource.url=jdbc:h2:mem:load-" + mode + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+				"--spring.jpa.hibernate.ddl-auto=create-drop",
+				"--spring.jpa.open-in-view=false",
+				"--spring.main.banner-mode=off",
+				"--spring.boot.admin.client.enabled=false",
+				"--application.outbox.drainers=0",
+				"--application.threads.virtual=" + virtual,
+				"--logging.level.root=WARN",
+				"--logging.file=");
+		try {
+			int catalogBooks = seed(context.getBean(JdbcTemplate.class));
+			String base = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort()
+					+ "/api/loans";
+			HttpClient client = HttpClient.newBuilder()
+					.connectTimeout(Duration.ofSeconds(10))
+					.build();
+
+			LongFunction<HttpRequest> get = n -> HttpRequest
+					.newBuilder(URI.create(base + "?customer=Customer+" + (n % (LOANS / 2)) + "&page=0&size=20"))
+					.GET()
+					.build();
+			// the same filter as GET; each customer has two loans, both fit in one page and one chunk
+			LongFunction<HttpRequest> stream = n -> HttpRequest
+					.newBuilder(URI.create(base + "/stream?customer=Customer+" + (n % (LOANS / 2))))
+					.GET()
+					.build();
+			AtomicLong nextFreeBook = new AtomicLong();
+			LongFunction<HttpRequest> post = n -> {
+				long book = catalogBooks + (nextFreeBook.getAndIncrement() % FREE_BOOKS);
+				String body = String.format("{\"isbn\":\"978%010d\",\"customer\":\"Load %d\",\"email\":\"load%d@email.com\"}",
+						book, n, n);
+				return HttpRequest.newBuilder(URI.create(base))
+						.header("Content-Type", "application/json")
+						.POST(HttpRequest.BodyPublishers.ofString(body))
+						.build();
+			};
+
+			List<String> results = new ArrayList<>();
+			results.add(measure(mode, "GET", client, get));
+			results.add(measure(mode, "STREAM", client, stream));
+			results.add(measure(mode, "POST", client, post));
+			return results;
+		} finally {
+			context.close();
+		}
+	}
+
+	private static String measure(String mode, String endpoint, HttpClient client, LongFunction<HttpRequest> requests)
+			throws InterruptedException {
+		load(client, requests, WARMUP_SECONDS, new ConcurrentHistogram(3), new AtomicLong());
+
+		Histogram latencies = new ConcurrentHistogram(3);
+		AtomicLong errors = new AtomicLong();
+		load(client, requests, SECONDS, latencies, errors);
+		long count = latencies.getTotalCount();
+		return String.format("%-8s %-8s %10d %8d %10.0f %9.1f %9.1f %9.1f %9.1f", mode, endpoint, count, errors.get(),
+				(double) count / SECONDS, millis(latencies.getValueAtPercentile(50)),
+				millis(latencies.getValueAtPercentile(99)), millis(latencies.getValueAtPercentile(99.9)),
+				millis(latencies.getMaxValue()));
+	}
+
+	/**
+	 * Starts {@link #CLIENTS} request chains, each sending its next request when the
+	 * previous one completes, until {@code seconds} have passed and the last in-flight
+	 * request is back.
+	 */
+	private static void load(HttpClient client, LongFunction<HttpRequest> requests, int seconds, Histogram latencies,
+			AtomicLong errors) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		AtomicLong sequence = new AtomicLong();
+		CountDownLatch done = new CountDownLatch(CLIENTS);
+		for (int i = 0; i < CLIENTS; i++) {
+			send(client, requests, sequence, deadline, latencies, errors, done);
+		}
+		if (!done.await(seconds + 120L, TimeUnit.SECONDS)) {
+			throw new IllegalStateException(done.getCount() + " of " + CLIENTS + " clients did not finish");
+		}
+	}
+
+	private static void send(HttpClient client, LongFunction<HttpRequest> requests, AtomicLong sequence, long deadline,
+			Histogram latencies, AtomicLong errors, CountDownLatch done) {
+		if (System.nanoTime() >= deadline) {
+			done.countDown();
+			return;
+		}
+		HttpRequest request = requests.apply(sequence.incrementAndGet() + ThreadLocalRandom.current().nextInt(LOANS));
+		long start = System.nanoTime();
+		client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+			latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+			if (failure != null || response.statusCode() >= 400) {
+				errors.incrementAndGet();
+			}
+			send(client, requests, sequence, deadline, latencies, errors, done);
+		});
+	}
+
+	private static double millis(long micros) {
+		return micros / 1_000.0;
+	}
+
+	/**
+	 * Same layout as {@link SeededDatabase}: {@link #LOANS} loans over catalog books,
+	 * followed by {@link #FREE_BOOKS} books the POSTs take in turn.
+	 *
+	 * @return number of catalog books, which is also the index of the first free book
+	 */
+	private static int seed(JdbcTemplate jdbcTemplate) {
+		int catalogBooks = Math.max(1, LOANS / LOANS_PER_BOOK);
+		int totalBooks = catalogBooks + FREE_BOOKS;
+
+		List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+		for (long id = 1; id <= totalBooks; id++) {
+			batch.add(new Object[] { id, "Author " + (id % 5_000), "Title " + id, String.format("978%010d", id - 1) });
+			if (batch.size() == BATCH_SIZE || id == totalBooks) {
+				jdbcTemplate.batchUpdate("insert into book (id, author, title, isbn, version) values (?, ?, ?, ?, 0)", batch);
+				batch.clear();
+			}
+		}
+
+		LocalDate today = LocalDate.now();
+		for (long id = 1; id <= LOANS; id++) {
+			long bookId = (id % catalogBooks) + 1;
+			batch.add(new Object[] { id, "Customer " + (id % (LOANS / 2)), "customer" + id + "@email.com", bookId,
+					Date.valueOf(today.minusDays(id % 30)) });
+			if (batch.size() == BATCH_SIZE || id == LOANS) {
+				jdbcTemplate.batchUpdate(
+						"insert into loan (id, customer, customer_email, book_id, loan_date, returned, active_book_id, version) "
+								+ "values (?, ?, ?, ?, ?, true, null, 0)",
+						batch);
+				batch.clear();
+			}
+		}
+
+		jdbcTemplate.execute("alter sequence book_seq restart with " + (totalBooks + 1));
+		jdbcTemplate.execute("alter sequence loan_seq restart with " + (LOANS + 1));
+		jdbcTemplate.execute("analyze");
+		return catalogBooks;
+	}
+
+}
@@ -0,0 +1,100 @@
+package br.com.gsr.benchmark;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import br.com.gsr.libraryapi.api.dto.LoanDTO;
+import br.com.gsr.libraryapi.api.dto.LoanFilterDTO;
+import br.com.gsr.libraryapi.service.LoanService;
+
+/**
+ * GET /api/loans for each combination of filter properties. The plan H2 picks for the
+ * equivalent SQL is printed before the trial, to check which index each one uses.
+ *
+ * At 10M loans, on disk: mvn -Pbenchmark verify -Djmh.args="-p loans=10000000 -p storage=file -jvmArgsAppend -Xmx3g LoanFilter"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoanFilterBenchmark {
+
+	private static final String SELECT = "select l.id, l.customer, l.customer_email, b.id, b.title, b.author, b.isbn "
+			+ "from loan l inner join book b on l.book_id = b.id where ";
+
+	public enum Shape {
+
+		CUSTOMER("l.customer = 'Customer 1'"),
+		ISBN("b.isbn = '9780000000001'"),
+		CUSTOMER_AND_DATES("l.customer = 'Customer 1' and l.loan_date >= current_date - 7 and l.loan_date <= current_date"),
+		ISBN_AND_DATES("b.isbn = '9780000000001' and l.loan_date >= current_date - 7 and l.loan_date <= current_date"),
+		DATES("l.loan_date >= current_date - 1 and l.loan_date <= current_date");
+
+		final String where;
+
+		Shape(String where) {
+			this.where = where;
+		}
+
+	}
+
+	@Param
+	public Shape shape;
+
+	LoanService loanService;
+	SeededDatabase database;
+	PageRequest pageRequest = PageRequest.of(0, 20);
+	long counter;
+
+	@Setup
+	public void setUp(SeededDatabase database) {
+		this.database = database;
+		this.loanService = database.getBean(LoanService.class);
+		JdbcTemplate jdbcTemplate = database.jdbcTemplate();
+		System.out.println();
+		System.out.println(shape + ": " + jdbcTemplate.queryForObject("explain " + SELECT + shape.where, String.class));
+	}
+
+	@Benchmark
+	public Page<LoanDTO> findDTO() {
+		return loanService.findDTO(nextFilter(), pageRequest);
+	}
+
+	private LoanFilterDTO nextFilter() {
+		long index = ++counter * 7919;
+		LocalDate today = LocalDate.now();
+		switch (shape) {
+		case CUSTOMER:
+			return LoanFilterDTO.builder().customer(database.customer(index)).build();
+		case ISBN:
+			return LoanFilterDTO.builder().isbn(database.catalogIsbn(index)).build();
+		case CUSTOMER_AND_DATES:
+			return LoanFilterDTO.builder().customer(database.customer(index))
+					.loanDateFrom(today.minusDays(7)).loanDateTo(today).build();
+		case ISBN_AND_DATES:
+			return LoanFilterDTO.builder().isbn(database.catalogIsbn(index))
+					.loanDateFrom(today.minusDays(7)).loanDateTo(today).build();
+		default:
+			LocalDate day = today.minusDays(index % 30);
+			return LoanFilterDTO.builder().loanDateFrom(day).loanDateTo(day).build();
+		}
+	}
+
+}
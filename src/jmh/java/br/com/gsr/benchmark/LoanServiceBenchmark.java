@@ -0,0 +1,117 @@
+package br.com.gsr.benchmark;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+
+import br.com.gsr.libraryapi.api.dto.LoanDTO;
+import br.com.gsr.libraryapi.api.dto.LoanFilterDTO;
+import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.api.model.entity.Loan;
+import br.com.gsr.libraryapi.service.LoanService;
+
+public class LoanServiceBenchmark {
+
+	@State(Scope.Thread)
+	public static class Reads {
+
+		LoanService loanService;
+		SeededDatabase database;
+		PageRequest pageRequest = PageRequest.of(0, 20);
+		long counter;
+
+		@Setup
+		public void setUp(SeededDatabase database) {
+			this.database = database;
+			this.loanService = database.getBean(LoanService.class);
+		}
+
+		LoanFilterDTO nextFilter() {
+			long index = ++counter;
+			return LoanFilterDTO.builder()
+					.customer(database.customer(index * 7919))
+					.build();
+		}
+
+	}
+
+	/**
+	 * Books used by {@link #save} are freed again before every iteration, so each
+	 * batch runs the full exists check plus insert against a growing loan table.
+	 * The reported score is the time of a whole batch of {@link #BATCH} saves.
+	 */
+	@State(Scope.Thread)
+	public static class Writes {
+
+		static final int BATCH = 500;
+
+		LoanService loanService;
+		SeededDatabase database;
+		int next;
+
+		@Setup(Level.Trial)
+		public void setUp(SeededDatabase database) {
+			this.database = database;
+			this.loanService = database.getBean(LoanService.class);
+		}
+
+		@Setup(Level.Iteration)
+		public void releaseBooks() {
+			database.jdbcTemplate().update("update loan set returned = true, active_book_id = null where id > ?", database.seededLoans);
+			next = 0;
+		}
+
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 3, time = 2)
+	@Measurement(iterations = 5, time = 2)
+	@Fork(1)
+	public Page<LoanDTO> find(Reads state) {
+		return state.loanService.findDTO(state.nextFilter(), state.pageRequest);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 3, time = 2)
+	@Measurement(iterations = 5, time = 2)
+	@Fork(1)
+	public Slice<LoanDTO> findSlice(Reads state) {
+		return state.loanService.findDTOSlice(state.nextFilter(), state.pageRequest);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@Warmup(iterations = 5, batchSize = Writes.BATCH)
+	@Measurement(iterations = 10, batchSize = Writes.BATCH)
+	@Fork(1)
+	public Loan save(Writes state) {
+		Book book = Book.builder().id(state.database.freeBookId(state.next++)).build();
+		Loan loan = Loan.builder()
+				.book(book)
+				.customer("Benchmark")
+				.customerEmail("benchmark@email.com")
+				.loanDate(LocalDate.now())
+				.build();
+		return state.loanService.save(loan);
+	}
+
+}
@@ -0,0 +1,151 @@
+package br.com.gsr.benchmark;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Boots {@link BenchmarkApplication} against a private in-memory H2 and seeds it with
+ * {@code loans} loans spread over {@code loans / LOANS_PER_BOOK} catalog books, plus
+ * {@link #FREE_BOOKS} books without any loan for the write benchmarks.
+ *
+ * With {@code storage=file} the database is kept under target/bench-h2 instead, for
+ * sizes that do not fit in memory, and seeded only when it does not hold exactly the
+ * seed yet, so later trials and runs reuse it. Meant for the read benchmarks: rows
+ * written by a trial stay for the next one.
+ */
+@State(Scope.Benchmark)
+public class SeededDatabase {
+
+	public static final int LOANS_PER_BOOK = 10;
+	public static final int FREE_BOOKS = 1_000;
+	private static final int BATCH_SIZE = 10_000;
+
+	@Param({ "10000", "1000000" })
+	public int loans;
+
+	@Param({ "mem" })
+	public String storage;
+
+	public int catalogBooks;
+	public long seededLoans;
+
+	private ConfigurableApplicationContext context;
+	private JdbcTemplate jdbcTemplate;
+
+	@Setup(Level.Trial)
+	public void start() {
+		boolean file = "file".equals(storage);
+		String url = file
+				? "jdbc:h2:file:./target/bench-h2/loans-" + loans + ";CACHE_SIZE=1048576;DB_CLOSE_ON_EXIT=FALSE"
+				: "jdbc:h2:mem:bench-" + loans + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+		context = new SpringApplicationBuilder(BenchmarkApplication.class)
+				.web(WebApplicationType.NONE)
+				.properties(
+						"spring.datasource.url=" + url,
+						"spring.jpa.hibernate.ddl-auto=" + (file ? "update" : "create-drop"),
+						"spring.jpa.open-in-view=false",
+						"spring.main.banner-mode=off",
+						"spring.boot.admin.client.enabled=false",
+						"logging.level.root=WARN")
+				.run();
+		jdbcTemplate = context.getBean(JdbcTemplate.class);
+		seed();
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		context.close();
+	}
+
+	public <T> T getBean(Class<T> type) {
+		return context.getBean(type);
+	}
+
+	public JdbcTemplate jdbcTemplate() {
+		return jdbcTemplate;
+	}
+
+	public String catalogIsbn(long index) {
+		return String.format("978%010d", index % catalogBooks);
+	}
+
+	public String customer(long index) {
+		return "Customer " + (index % (loans / 2));
+	}
+
+	/**
+	 * Id of the n-th book that has no loan once the trial starts.
+	 */
+	public long freeBookId(int n) {
+		return catalogBooks + 1L + (n % FREE_BOOKS);
+	}
+
+	private void seed() {
+		catalogBooks = Math.max(1, loans / LOANS_PER_BOOK);
+		int totalBooks = catalogBooks + FREE_BOOKS;
+		seededLoans = loans;
+		if (count("loan") != loans || count("book") != totalBooks) {
+			jdbcTemplate.execute("set referential_integrity false");
+			jdbcTemplate.execute("truncate table loan");
+			jdbcTemplate.execute("truncate table book");
+			jdbcTemplate.execute("set referential_integrity true");
+			insertRows(totalBooks);
+		}
+
+		// the pooled-lo optimizer hands out the block of ids starting at the value it reads
+		jdbcTemplate.execute("alter sequence book_seq restart with " + (totalBooks + 1));
+		jdbcTemplate.execute("alter sequence loan_seq restart with " + (loans + 1));
+		jdbcTemplate.execute("analyze");
+	}
+
+	private long count(String table) {
+		return jdbcTemplate.queryForObject("select count(*) from " + table, Long.class);
+	}
+
+	private void insertRows(int totalBooks) {
+		List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+		for (long id = 1; id <= totalBooks; id++) {
+			batch.add(new Object[] { id, "Author " + (id % 5_000), "Title " + id, String.format("978%010d", id - 1) });
+			if (batch.size() == BATCH_SIZE) {
+				jdbcTemplate.batchUpdate("insert into book (id, author, title, isbn, version) values (?, ?, ?, ?, 0)", batch);
+				batch.clear();
+			}
+		}
+		jdbcTemplate.batchUpdate("insert into book (id, author, title, isbn, version) values (?, ?, ?, ?, 0)", batch);
+		batch.clear();
+
+		LocalDate today = LocalDate.now();
+		for (long id = 1; id <= loans; id++) {
+			long bookId = (id % catalogBooks) + 1;
+			boolean returned = id <= loans - catalogBooks;
+			batch.add(new Object[] { id, customer(id), "customer" + id + "@email.com", bookId,
+					Date.valueOf(today.minusDays(id % 30)), returned, returned ? null : bookId });
+			if (batch.size() == BATCH_SIZE) {
+				insertLoans(batch);
+				batch.clear();
+			}
+		}
+		insertLoans(batch);
+	}
+
+	private void insertLoans(List<Object[]> batch) {
+		jdbcTemplate.batchUpdate(
+				"insert into loan (id, customer, customer_email, book_id, loan_date, returned, active_book_id, version) "
+						+ "values (?, ?, ?, ?, ?, ?, ?, 0)",
+				batch);
+	}
+
+}
@@ -3,7 +3,6 @@ package br.com.gsr.libraryapi;
 import java.util.Arrays;
 import java.util.List;
 
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
@@ -11,6 +10,8 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
+import br.com.gsr.libraryapi.api.mapper.BookMapper;
+import br.com.gsr.libraryapi.api.mapper.LoanMapper;
 import br.com.gsr.libraryapi.service.EmailService;
 
 @SpringBootApplication
@@ -21,15 +22,20 @@ public class LibraryApiApplication {
 	private EmailService emailService;
 	
 	@Bean
-	public ModelMapper modelMapper() {
-		return new ModelMapper();
+	public BookMapper bookMapper() {
+		return new BookMapper();
+	}
+	
+	@Bean
+	public LoanMapper loanMapper(BookMapper bookMapper) {
+		return new LoanMapper(bookMapper);
 	}
 	
 	@Bean
 	public CommandLineRunner runner() {
 		return args -> {
 			List<String> emails = Arrays.asList("labrary-api-d8188b@inbox.mailtrap.io");
-			emailService.sendMails("Testando serviço de emails", emails);
+			emailService.sendMails("Teste", "Testando serviço de emails", emails);
 		};
 	}
 	
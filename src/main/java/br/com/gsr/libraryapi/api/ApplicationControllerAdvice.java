@@ -1,7 +1,9 @@
 package br.com.gsr.libraryapi.api;
 
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -11,6 +13,7 @@ import org.springframework.web.server.ResponseStatusException;
 
 import br.com.gsr.libraryapi.api.exception.ApiErrors;
 import br.com.gsr.libraryapi.exception.BusinessException;
+import br.com.gsr.libraryapi.exception.StreamsBusyException;
 
 @RestControllerAdvice
 public class ApplicationControllerAdvice {
@@ -29,6 +32,24 @@ public class ApplicationControllerAdvice {
 		return new ApiErrors(ex);
 	}
 	
+	@ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+	public ResponseEntity<ApiErrors> handleOptimisticLockingFailure(ObjectOptimisticLockingFailureException ex) {
+		return handleResponseStatusException(new ResponseStatusException(HttpStatus.CONFLICT, "Modified concurrently, try again."));
+	}
+	
+	/**
+	 * Streamed responses wait for a thread of a bounded pool; when it and its queue are
+	 * full the client is asked to come back later. The content type is set again, as the
+	 * rejected stream already set its own.
+	 */
+	@ExceptionHandler(StreamsBusyException.class)
+	public ResponseEntity<ApiErrors> handleStreamsBusy(StreamsBusyException ex) {
+		ResponseStatusException status = new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+		return ResponseEntity.status(status.getStatus())
+				.contentType(MediaType.APPLICATION_JSON)
+				.body(new ApiErrors(status));
+	}
+	
 	@ExceptionHandler(ResponseStatusException.class)
 	public ResponseEntity<ApiErrors> handleResponseStatusException(ResponseStatusException ex) {
 		return new ResponseEntity<ApiErrors>(new ApiErrors(ex), ex.getStatus());
@@ -0,0 +1,42 @@
+package br.com.gsr.libraryapi.api.dto;
+
+import java.util.Collections;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkItemResultDTO {
+
+	public enum Status { CREATED, UPDATED, DUPLICATE, INVALID, NOT_FOUND }
+
+	/**
+	 * Position of the item in the request, starting at 0.
+	 */
+	private int index;
+
+	private Long id;
+
+	private Status status;
+
+	private List<String> errors;
+
+	public static BulkItemResultDTO succeeded(int index, Status status, Long id) {
+		return BulkItemResultDTO.builder().index(index).status(status).id(id).build();
+	}
+
+	public static BulkItemResultDTO failed(int index, Status status, String error) {
+		return failed(index, status, Collections.singletonList(error));
+	}
+
+	public static BulkItemResultDTO failed(int index, Status status, List<String> errors) {
+		return BulkItemResultDTO.builder().index(index).status(status).errors(errors).build();
+	}
+
+}
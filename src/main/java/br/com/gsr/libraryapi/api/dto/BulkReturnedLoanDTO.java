@@ -0,0 +1,22 @@
+package br.com.gsr.libraryapi.api.dto;
+
+import javax.validation.constraints.NotNull;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Builder
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkReturnedLoanDTO {
+
+	@NotNull
+	private Long id;
+
+	@NotNull
+	private Boolean returned;
+
+}
@@ -0,0 +1,17 @@
+package br.com.gsr.libraryapi.api.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CursorPageDTO<T> {
+
+	private List<T> content;
+	private String nextCursor;
+	
+}
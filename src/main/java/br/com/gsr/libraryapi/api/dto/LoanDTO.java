@@ -24,4 +24,16 @@ public class LoanDTO {
 	@NotNull
 	private BookDTO book;
 	
+	/**
+	 * Used by the projection queries of LoanRepository. Fills the same fields as
+	 * LoanMapper, with the book columns nested into a BookDTO.
+	 */
+	public LoanDTO(Long id, String customer, String email, Long bookId, String bookTitle, String bookAuthor,
+			String bookIsbn) {
+		this.id = id;
+		this.customer = customer;
+		this.email = email;
+		this.book = new BookDTO(bookId, bookTitle, bookAuthor, bookIsbn);
+	}
+	
 }
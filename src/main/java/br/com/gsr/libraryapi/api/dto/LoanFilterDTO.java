@@ -1,5 +1,10 @@
 package br.com.gsr.libraryapi.api.dto;
 
+import java.time.LocalDate;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -14,4 +19,10 @@ public class LoanFilterDTO {
 	private String isbn;
 	private String customer;
 	
+	@DateTimeFormat(iso = ISO.DATE)
+	private LocalDate loanDateFrom;
+	
+	@DateTimeFormat(iso = ISO.DATE)
+	private LocalDate loanDateTo;
+	
 }
@@ -0,0 +1,20 @@
+package br.com.gsr.libraryapi.api.dto;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+
+public class SliceDTO<T> extends SliceImpl<T> {
+
+	private static final long serialVersionUID = 1L;
+
+	public SliceDTO(List<T> content, Pageable pageable, boolean hasNext) {
+		super(content, pageable, hasNext);
+	}
+
+	public boolean getHasNext() {
+		return hasNext();
+	}
+
+}
@@ -0,0 +1,27 @@
+package br.com.gsr.libraryapi.api.mapper;
+
+import br.com.gsr.libraryapi.api.dto.BookDTO;
+import br.com.gsr.libraryapi.api.model.entity.Book;
+
+public class BookMapper {
+
+	public BookDTO toDTO(Book book) {
+		if (book == null) {
+			return null;
+		}
+		return new BookDTO(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn());
+	}
+
+	public Book toEntity(BookDTO dto) {
+		if (dto == null) {
+			return null;
+		}
+		return Book.builder()
+				.id(dto.getId())
+				.title(dto.getTitle())
+				.author(dto.getAuthor())
+				.isbn(dto.getIsbn())
+				.build();
+	}
+
+}
@@ -0,0 +1,26 @@
+package br.com.gsr.libraryapi.api.mapper;
+
+import br.com.gsr.libraryapi.api.dto.LoanDTO;
+import br.com.gsr.libraryapi.api.model.entity.Loan;
+
+public class LoanMapper {
+
+	private final BookMapper bookMapper;
+
+	public LoanMapper(BookMapper bookMapper) {
+		this.bookMapper = bookMapper;
+	}
+
+	public LoanDTO toDTO(Loan loan) {
+		if (loan == null) {
+			return null;
+		}
+		LoanDTO dto = new LoanDTO();
+		dto.setId(loan.getId());
+		dto.setCustomer(loan.getCustomer());
+		dto.setEmail(loan.getCustomerEmail());
+		dto.setBook(bookMapper.toDTO(loan.getBook()));
+		return dto;
+	}
+
+}
@@ -1,5 +1,7 @@
 package br.com.gsr.libraryapi.api.model.entity;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 
 import javax.persistence.Column;
@@ -8,8 +10,19 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.OneToMany;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -21,11 +34,19 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
-@Table
+@Table(uniqueConstraints = @UniqueConstraint(name = Book.UK_ISBN, columnNames = "isbn"),
+		indexes = @Index(name = "idx_book_changed_at", columnList = "changed_at"))
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Book.CACHE_REGION)
+@NaturalIdCache(region = Book.ISBN_CACHE_REGION)
 public class Book {
 
+	public static final String UK_ISBN = "uk_book_isbn";
+	public static final String CACHE_REGION = "books";
+	public static final String ISBN_CACHE_REGION = "books-by-isbn";
+
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+	@SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = 50)
 	private Long id;
 	
 	@Column
@@ -34,10 +55,37 @@ public class Book {
 	@Column
 	private String title;
 	
+	/**
+	 * Never changes once the book is created, so the natural-id cache maps it to the id
+	 * until the book is deleted.
+	 */
+	@NaturalId
 	@Column
 	private String isbn;
 	
+	/**
+	 * Incremented on every update; served as the book's ETag.
+	 */
+	@Version
+	private Long version;
+	
+	/**
+	 * Last insert or update, by the clock of the node that wrote it; the search indexes
+	 * of the other nodes pick up the books changed since their last refresh.
+	 */
+	@Column(name = "changed_at")
+	private Instant changedAt;
+	
 	@OneToMany(mappedBy = "book", fetch = FetchType.LAZY)
 	private List<Loan> loans;
 	
+	/**
+	 * Truncated to the precision databases keep, so the instant read back is the one set.
+	 */
+	@PrePersist
+	@PreUpdate
+	void touch() {
+		this.changedAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+	}
+	
 }
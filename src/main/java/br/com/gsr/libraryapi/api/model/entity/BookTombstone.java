@@ -0,0 +1,36 @@
+package br.com.gsr.libraryapi.api.model.entity;
+
+import java.time.Instant;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Left behind by a deleted book, so the search indexes of the other nodes learn about
+ * the delete from the rows written since their last refresh, as they do for changed
+ * books. Kept for {@code application.books.tombstone-retention}.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(indexes = @Index(name = "idx_book_tombstone_deleted_at", columnList = "deleted_at"))
+public class BookTombstone {
+
+	@Id
+	@Column(name = "book_id")
+	private Long bookId;
+
+	@Column(name = "deleted_at")
+	private Instant deletedAt;
+
+}
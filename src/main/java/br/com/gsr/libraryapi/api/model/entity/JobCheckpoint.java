@@ -0,0 +1,43 @@
+package br.com.gsr.libraryapi.api.model.entity;
+
+import java.time.LocalDate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Version;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of a chunked job run: the last id processed on {@code runDate}, so a run
+ * interrupted halfway resumes after it instead of starting over.
+ *
+ * Versioned, so a node writing progress from a stale read, e.g. after its lock expired
+ * and another node moved on, fails instead of overwriting the newer progress.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+public class JobCheckpoint {
+
+	@Id
+	private String name;
+
+	@Column(name = "run_date")
+	private LocalDate runDate;
+
+	@Column(name = "last_id")
+	private Long lastId;
+
+	private boolean completed;
+
+	@Version
+	private Long version;
+
+}
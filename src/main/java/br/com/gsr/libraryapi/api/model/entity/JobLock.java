@@ -0,0 +1,34 @@
+package br.com.gsr.libraryapi.api.model.entity;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Lease on a scheduled job: the node in {@code lockedBy} runs it until
+ * {@code lockedUntil}, after which any node may take it over.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+public class JobLock {
+
+	@Id
+	private String name;
+
+	@Column(name = "locked_by")
+	private String lockedBy;
+
+	@Column(name = "locked_until")
+	private LocalDateTime lockedUntil;
+
+}
@@ -4,30 +4,58 @@ import java.time.LocalDate;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.ForeignKey;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
 
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
 @Builder
+@AllArgsConstructor
+@NoArgsConstructor
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = Loan.UK_ACTIVE_BOOK, columnNames = "active_book_id"),
+		indexes = {
+			// the loan filter matches on customer or book (through the isbn) and narrows by date
+			@Index(name = "idx_loan_customer_date", columnList = "customer, loan_date"),
+			@Index(name = "idx_loan_book_date", columnList = "book_id, loan_date"),
+			@Index(name = "idx_loan_date", columnList = "loan_date")
+		})
 public class Loan {
 
+	public static final String UK_ACTIVE_BOOK = "uk_loan_active_book";
+	public static final String FK_BOOK = "fk_loan_book";
+
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_seq")
+	@SequenceGenerator(name = "loan_seq", sequenceName = "loan_seq", allocationSize = 50)
 	private Long id;
 	private String customer;
 	
 	@Column(name = "customer_email")
 	private String customerEmail;
 	
-	@ManyToOne
-	@JoinColumn(name = "book_id")
+	/**
+	 * Lazy so that loading a loan does not load its book on its own; queries that need
+	 * the book fetch it in the same select.
+	 */
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "book_id", foreignKey = @ForeignKey(name = Loan.FK_BOOK))
 	private Book book;
 	
 	@Column(name = "loan_date")
@@ -36,4 +64,23 @@ public class Loan {
 	
 	private Boolean returned;
 
+	/**
+	 * Same as book_id while the loan is open and null once it is returned, so the unique
+	 * constraint allows a single open loan per book (a portable partial unique index).
+	 */
+	@Column(name = "active_book_id")
+	private Long activeBookId;
+
+	/**
+	 * Incremented on every update, so listings can tell whether a loan changed.
+	 */
+	@Version
+	private Long version;
+
+	@PrePersist
+	@PreUpdate
+	void syncActiveBook() {
+		this.activeBookId = book == null || Boolean.TRUE.equals(returned) ? null : book.getId();
+	}
+
 }
@@ -0,0 +1,55 @@
+package br.com.gsr.libraryapi.api.model.entity;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A mail waiting to be sent, written in the same transaction as the change that
+ * caused it. Drainers lease rows by setting {@code leasedBy} and {@code leasedUntil};
+ * a row whose lease expired, because its drainer failed or died, is claimed again.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(indexes = @Index(name = "ix_outbox_leased_until", columnList = "leased_until"))
+public class OutboxMessage {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_seq")
+	@SequenceGenerator(name = "outbox_seq", sequenceName = "outbox_seq", allocationSize = 50)
+	private Long id;
+
+	private String recipient;
+
+	private String subject;
+
+	@Column(length = 4000)
+	private String message;
+
+	@Column(name = "created_at")
+	private LocalDateTime createdAt;
+
+	private int attempts;
+
+	@Column(name = "leased_by")
+	private String leasedBy;
+
+	@Column(name = "leased_until")
+	private LocalDateTime leasedUntil;
+
+}
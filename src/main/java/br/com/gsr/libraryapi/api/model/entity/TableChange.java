@@ -0,0 +1,36 @@
+package br.com.gsr.libraryapi.api.model.entity;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One of the counters of writes to a table. Each table has several, and a writer bumps
+ * one at random, so concurrent writers rarely wait on the same row lock; the table's
+ * count is the sum of its counters.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(indexes = @Index(name = "idx_table_change_table", columnList = "table_name"))
+public class TableChange {
+
+	@Id
+	private String slot;
+
+	@Column(name = "table_name")
+	private String tableName;
+
+	@Column
+	private long changes;
+
+}
@@ -1,15 +1,35 @@
 package br.com.gsr.libraryapi.api.model.repository;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import br.com.gsr.libraryapi.api.model.entity.Book;
 
-public interface BookRepository extends JpaRepository<Book, Long>{
+public interface BookRepository extends JpaRepository<Book, Long>, BookRepositoryCustom {
 
-	boolean existsByIsbn(String isbn);
+	List<Book> findByIsbnIn(Collection<String> isbns);
 
-	Optional<Book> findByIsbn(String isbn);
+	@Query(value = "select b.isbn from Book b where b.isbn in :isbns")
+	Set<String> findExistingIsbns(@Param("isbns") Collection<String> isbns);
+
+	@Query(value = "select b.version from Book b where b.id = :id")
+	Optional<Long> findVersionById(@Param("id") Long id);
+
+	@Query(value = "select b from Book b where b.id > :afterId order by b.id")
+	List<Book> findAllAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+	/**
+	 * Books inserted or updated after the instant, through the index on changed_at.
+	 */
+	@Query(value = "select b from Book b where b.changedAt > :since and b.id > :afterId order by b.id")
+	List<Book> findChangedAfter(@Param("since") Instant since, @Param("afterId") Long afterId, Pageable pageable);
 
 }
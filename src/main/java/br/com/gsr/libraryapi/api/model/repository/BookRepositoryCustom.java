@@ -0,0 +1,46 @@
+package br.com.gsr.libraryapi.api.model.repository;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import br.com.gsr.libraryapi.api.dto.BookDTO;
+import br.com.gsr.libraryapi.api.model.entity.Book;
+
+public interface BookRepositoryCustom {
+
+	/**
+	 * Looks the book up by its natural id, which resolves the isbn through the
+	 * natural-id cache and the book through the entity cache before going to the
+	 * database, unlike a query on the isbn column.
+	 */
+	Optional<Book> findByNaturalId(String isbn);
+
+	/**
+	 * Loads the book to be changed from the database, skipping the entity cache, which
+	 * may hold a copy stale from another node. Writing it through the entity then
+	 * replaces or evicts only its cache entries, unlike bulk statements, which clear the
+	 * whole regions.
+	 */
+	Optional<Book> findForWrite(Long id);
+
+	/**
+	 * Books whose title, author and isbn start with the ones of the filter, ignoring case.
+	 * Only the properties present become predicates, as in {@link LoanRepositoryCustom},
+	 * so no null comparison keeps the database from using an index; a present id must
+	 * match too. LIKE wildcards in the filter are matched literally.
+	 */
+	List<Book> findByFilterAfter(Book filter, Long afterId, int limit);
+
+	/**
+	 * Same as {@link #findByFilterAfter}, selected straight into BookDTO, without managed
+	 * entities or their snapshots.
+	 */
+	Page<BookDTO> findDTOByFilter(Book filter, Pageable pageable);
+
+	Slice<BookDTO> findDTOSliceByFilter(Book filter, Pageable pageable);
+
+}
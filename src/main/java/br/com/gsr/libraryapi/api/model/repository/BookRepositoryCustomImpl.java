@@ -0,0 +1,114 @@
+package br.com.gsr.libraryapi.api.model.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+import javax.persistence.CacheRetrieveMode;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.hibernate.Session;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.query.EscapeCharacter;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
+
+import br.com.gsr.libraryapi.api.dto.BookDTO;
+import br.com.gsr.libraryapi.api.model.entity.Book;
+
+public class BookRepositoryCustomImpl implements BookRepositoryCustom {
+
+	private static final String RETRIEVE_MODE = "javax.persistence.cache.retrieveMode";
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	/**
+	 * Transactional so the unwrapped session stays open, also when there is no
+	 * transaction or open EntityManager around the call.
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Optional<Book> findByNaturalId(String isbn) {
+		return entityManager.unwrap(Session.class)
+				.bySimpleNaturalId(Book.class)
+				.loadOptional(isbn);
+	}
+
+	@Override
+	public Optional<Book> findForWrite(Long id) {
+		return Optional.ofNullable(entityManager.find(Book.class, id,
+				Collections.singletonMap(RETRIEVE_MODE, CacheRetrieveMode.BYPASS)));
+	}
+
+	@Override
+	public List<Book> findByFilterAfter(Book filter, Long afterId, int limit) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Book> query = cb.createQuery(Book.class);
+		Root<Book> book = query.from(Book.class);
+		List<Predicate> predicates = predicates(cb, filter, book);
+		predicates.add(cb.greaterThan(book.get("id"), afterId));
+		query.select(book).where(predicates.toArray(new Predicate[0])).orderBy(cb.asc(book.get("id")));
+		return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+	}
+
+	@Override
+	public Page<BookDTO> findDTOByFilter(Book filter, Pageable pageable) {
+		return CriteriaPages.page(dtos(filter, pageable), pageable, () -> count(filter));
+	}
+
+	@Override
+	public Slice<BookDTO> findDTOSliceByFilter(Book filter, Pageable pageable) {
+		return CriteriaPages.slice(dtos(filter, pageable), pageable);
+	}
+
+	private TypedQuery<BookDTO> dtos(Book filter, Pageable pageable) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<BookDTO> query = cb.createQuery(BookDTO.class);
+		Root<Book> book = query.from(Book.class);
+		query.select(cb.construct(BookDTO.class, book.get("id"), book.get("title"), book.get("author"), book.get("isbn")))
+			.where(predicates(cb, filter, book).toArray(new Predicate[0]))
+			.orderBy(QueryUtils.toOrders(pageable.getSort(), book, cb));
+		return entityManager.createQuery(query);
+	}
+
+	private long count(Book filter) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Long> query = cb.createQuery(Long.class);
+		Root<Book> book = query.from(Book.class);
+		query.select(CriteriaPages.countRows(cb)).where(predicates(cb, filter, book).toArray(new Predicate[0]));
+		return entityManager.createQuery(query).getSingleResult();
+	}
+
+	private static List<Predicate> predicates(CriteriaBuilder cb, Book filter, Root<Book> book) {
+		List<Predicate> predicates = new ArrayList<>();
+		if (filter.getId() != null) {
+			predicates.add(cb.equal(book.get("id"), filter.getId()));
+		}
+		startsWith(cb, book.get("title"), filter.getTitle(), predicates);
+		startsWith(cb, book.get("author"), filter.getAuthor(), predicates);
+		startsWith(cb, book.get("isbn"), filter.getIsbn(), predicates);
+		return predicates;
+	}
+
+	private static void startsWith(CriteriaBuilder cb, Path<String> path, String prefix, List<Predicate> predicates) {
+		if (StringUtils.hasText(prefix)) {
+			EscapeCharacter escape = EscapeCharacter.DEFAULT;
+			String pattern = escape.escape(prefix).toLowerCase(Locale.ROOT) + "%";
+			predicates.add(cb.like(cb.lower(path), pattern, escape.getEscapeCharacter()));
+		}
+	}
+
+}
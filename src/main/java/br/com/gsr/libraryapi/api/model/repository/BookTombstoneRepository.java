@@ -0,0 +1,32 @@
+package br.com.gsr.libraryapi.api.model.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import br.com.gsr.libraryapi.api.model.entity.BookTombstone;
+
+public interface BookTombstoneRepository extends JpaRepository<BookTombstone, Long> {
+
+	/**
+	 * Plain insert, where a save would first look for a tombstone with the assigned id.
+	 */
+	@Modifying
+	@Query(value = "insert into book_tombstone (book_id, deleted_at) values (:bookId, :deletedAt)", nativeQuery = true)
+	int insert(@Param("bookId") Long bookId, @Param("deletedAt") Instant deletedAt);
+
+	@Query(value = "select t.bookId from BookTombstone t where t.deletedAt > :since and t.bookId > :afterId order by t.bookId")
+	List<Long> findDeletedAfter(@Param("since") Instant since, @Param("afterId") Long afterId, Pageable pageable);
+
+	@Transactional
+	@Modifying
+	@Query(value = "delete from BookTombstone t where t.deletedAt < :before")
+	int deleteDeletedBefore(@Param("before") Instant before);
+
+}
@@ -0,0 +1,59 @@
+package br.com.gsr.libraryapi.api.model.repository;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+/**
+ * Paging of the Criteria queries in the repository fragments, the way Spring Data pages
+ * its query methods.
+ */
+final class CriteriaPages {
+
+	private CriteriaPages() {
+	}
+
+	/**
+	 * Counts only when the content does not already tell the total.
+	 */
+	static <T> Page<T> page(TypedQuery<T> query, Pageable pageable, LongSupplier count) {
+		List<T> content = limit(query, pageable, pageable.getPageSize()).getResultList();
+		boolean complete = pageable.isPaged() && pageable.getOffset() == 0 && content.size() < pageable.getPageSize();
+		return new PageImpl<>(content, pageable, complete ? content.size() : count.getAsLong());
+	}
+
+	/**
+	 * {@code count(1)} rather than the {@code count(id)} Hibernate renders for a root,
+	 * which H2 answers by reading every row instead of from the index alone: counting a
+	 * day of 10M loans took 7 to 11 s that way, against 0.15 to 0.7 s.
+	 */
+	static Expression<Long> countRows(CriteriaBuilder cb) {
+		return cb.count(cb.literal(1));
+	}
+
+	/**
+	 * Reads one row past the page to tell whether there is a next one, without counting.
+	 */
+	static <T> Slice<T> slice(TypedQuery<T> query, Pageable pageable) {
+		List<T> content = limit(query, pageable, pageable.getPageSize() + 1).getResultList();
+		boolean hasNext = pageable.isPaged() && content.size() > pageable.getPageSize();
+		return new SliceImpl<>(hasNext ? content.subList(0, pageable.getPageSize()) : content, pageable, hasNext);
+	}
+
+	private static <T> TypedQuery<T> limit(TypedQuery<T> query, Pageable pageable, int maxResults) {
+		if (pageable.isPaged()) {
+			query.setFirstResult((int) pageable.getOffset()).setMaxResults(maxResults);
+		}
+		return query;
+	}
+
+}
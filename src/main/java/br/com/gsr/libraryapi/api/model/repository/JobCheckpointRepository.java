@@ -0,0 +1,9 @@
+package br.com.gsr.libraryapi.api.model.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import br.com.gsr.libraryapi.api.model.entity.JobCheckpoint;
+
+public interface JobCheckpointRepository extends JpaRepository<JobCheckpoint, String> {
+
+}
@@ -0,0 +1,40 @@
+package br.com.gsr.libraryapi.api.model.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import br.com.gsr.libraryapi.api.model.entity.JobLock;
+
+public interface JobLockRepository extends JpaRepository<JobLock, String> {
+
+	/**
+	 * Takes the lease when it expired or already belongs to {@code owner}, which renews it.
+	 */
+	@Transactional
+	@Modifying
+	@Query(value = "update JobLock j set j.lockedBy = :owner, j.lockedUntil = :until "
+			+ "where j.name = :name and (j.lockedUntil < :now or j.lockedBy = :owner)")
+	int acquire(@Param("name") String name, @Param("owner") String owner, @Param("until") LocalDateTime until,
+			@Param("now") LocalDateTime now);
+
+	/**
+	 * Plain insert, failing on a duplicate name, where a save would merge into the row
+	 * of the node that created it first.
+	 */
+	@Transactional
+	@Modifying
+	@Query(value = "insert into job_lock (name, locked_by, locked_until) values (:name, :owner, :until)",
+			nativeQuery = true)
+	int insert(@Param("name") String name, @Param("owner") String owner, @Param("until") LocalDateTime until);
+
+	@Transactional
+	@Modifying
+	@Query(value = "update JobLock j set j.lockedUntil = :now where j.name = :name and j.lockedBy = :owner")
+	int release(@Param("name") String name, @Param("owner") String owner, @Param("now") LocalDateTime now);
+
+}
@@ -0,0 +1,16 @@
+package br.com.gsr.libraryapi.api.model.repository;
+
+import java.time.LocalDate;
+
+/**
+ * The columns the late loan job needs, without the loan entity and its book.
+ */
+public interface LateLoan {
+
+	Long getId();
+
+	String getCustomerEmail();
+
+	LocalDate getLoanDate();
+
+}
@@ -1,31 +1,85 @@
 package br.com.gsr.libraryapi.api.model.repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
-import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.api.dto.LoanDTO;
 import br.com.gsr.libraryapi.api.model.entity.Loan;
 
-public interface LoanRepository extends JpaRepository<Loan, Long>{
+public interface LoanRepository extends JpaRepository<Loan, Long>, LoanRepositoryCustom {
+
+	/**
+	 * Selects straight into LoanDTO, without managed entities or their snapshots.
+	 */
+	String SELECT_LOAN_DTO = "select new br.com.gsr.libraryapi.api.dto.LoanDTO("
+			+ "l.id, l.customer, l.customerEmail, b.id, b.title, b.author, b.isbn) from Loan l join l.book as b ";
 
-	@Query(value = "select case when (count(l.id) > 0 ) then true else false end from Loan l "
-			+ "where l.book = :book and (l.returned is null or l.returned is false)")
-	boolean existsByBookAndNotReturned(@Param("book") Book book);
+	@Query(value = "select l.activeBookId from Loan l where l.activeBookId in :bookIds")
+	Set<Long> findActiveBookIds(@Param("bookIds") Collection<Long> bookIds);
 
+	@Query(value = "select l from Loan l join fetch l.book where l.id in :ids")
+	List<Loan> findAllByIdWithBook(@Param("ids") Collection<Long> ids);
 	
-	@Query(value = "select l from Loan l join l.book as b where b.isbn  = :isbn or l.customer = :customer ")
-	Page<Loan> findByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer, Pageable pageable);
+	@Override
+	@EntityGraph(attributePaths = "book")
+	Optional<Loan> findById(Long id);
+
+	@Query(value = SELECT_LOAN_DTO + "where b.id = :bookId",
+			countQuery = "select count(l) from Loan l where l.book.id = :bookId")
+	Page<LoanDTO> findDTOByBookId(@Param("bookId") Long bookId, Pageable pageable);
+
+	@Query(value = SELECT_LOAN_DTO + "where b.id = :bookId")
+	Slice<LoanDTO> findDTOSliceByBookId(@Param("bookId") Long bookId, Pageable pageable);
+
+	/**
+	 * Single-statement returns. Bulk updates skip the entity callbacks and versioning, so
+	 * activeBookId and the version are set here as {@link Loan#syncActiveBook} and
+	 * {@code @Version} would.
+	 */
+	@Modifying(clearAutomatically = true)
+	@Query(value = "update Loan l set l.returned = true, l.activeBookId = null, l.version = l.version + 1 "
+			+ "where l.id = :id")
+	int markReturned(@Param("id") Long id);
 
+	@Modifying(clearAutomatically = true)
+	@Query(value = "update Loan l set l.returned = :returned, l.activeBookId = l.book.id, l.version = l.version + 1 "
+			+ "where l.id = :id")
+	int markNotReturned(@Param("id") Long id, @Param("returned") Boolean returned);
 
-	Page<Loan> findByBook(Book book, Pageable pageable);
+	/**
+	 * Every loan with its book, in id order. Read-only and fetched from the driver in
+	 * chunks, so callers must consume it inside a transaction and close it.
+	 */
+	@QueryHints({
+		@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"),
+		@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+	})
+	@Query(value = "select l from Loan l join fetch l.book order by l.id")
+	Stream<Loan> streamAll();
 
-	@Query(value = "select l from Loan l where l.loanDate <= :threeDaysAgo and (l.returned = false or l.returned is null)")
-	List<Loan> findByLoansDateLessThanAndNotReturned(@Param("threeDaysAgo") LocalDate threeDaysAgo);
+	/**
+	 * Late loans of one shard: the ids whose remainder by {@code shards} is {@code shard}.
+	 */
+	@Query(value = "select l.id as id, l.customerEmail as customerEmail, l.loanDate as loanDate from Loan l "
+			+ "where l.loanDate <= :lateDate and (l.returned = false or l.returned is null) and l.id > :afterId "
+			+ "and mod(l.id, :shards) = :shard order by l.id")
+	List<LateLoan> findLateLoansAfter(@Param("lateDate") LocalDate lateDate, @Param("shards") int shards,
+			@Param("shard") int shard, @Param("afterId") Long afterId, Pageable pageable);
 
 }
@@ -0,0 +1,26 @@
+package br.com.gsr.libraryapi.api.model.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import br.com.gsr.libraryapi.api.dto.LoanDTO;
+import br.com.gsr.libraryapi.api.dto.LoanFilterDTO;
+import br.com.gsr.libraryapi.api.model.entity.Loan;
+
+/**
+ * Loan searches built from the properties present in a {@link LoanFilterDTO}: each one
+ * narrows the result (AND), and missing or blank ones are left out of the query instead
+ * of being compared with null, so the database can use the index of the columns filtered.
+ */
+public interface LoanRepositoryCustom {
+
+	List<Loan> findByFilterAfter(LoanFilterDTO filter, Long afterId, int limit);
+
+	Page<LoanDTO> findDTOByFilter(LoanFilterDTO filter, Pageable pageable);
+
+	Slice<LoanDTO> findDTOSliceByFilter(LoanFilterDTO filter, Pageable pageable);
+
+}
@@ -0,0 +1,100 @@
+package br.com.gsr.libraryapi.api.model.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.util.StringUtils;
+
+import br.com.gsr.libraryapi.api.dto.LoanDTO;
+import br.com.gsr.libraryapi.api.dto.LoanFilterDTO;
+import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.api.model.entity.Loan;
+
+public class LoanRepositoryCustomImpl implements LoanRepositoryCustom {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	public List<Loan> findByFilterAfter(LoanFilterDTO filter, Long afterId, int limit) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Loan> query = cb.createQuery(Loan.class);
+		Root<Loan> loan = query.from(Loan.class);
+		@SuppressWarnings("unchecked")
+		Join<Loan, Book> book = (Join<Loan, Book>) loan.<Loan, Book>fetch("book");
+		List<Predicate> predicates = predicates(cb, filter, loan, () -> book);
+		predicates.add(cb.greaterThan(loan.get("id"), afterId));
+		query.select(loan).where(predicates.toArray(new Predicate[0])).orderBy(cb.asc(loan.get("id")));
+		return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+	}
+
+	@Override
+	public Page<LoanDTO> findDTOByFilter(LoanFilterDTO filter, Pageable pageable) {
+		return CriteriaPages.page(dtos(filter, pageable), pageable, () -> count(filter));
+	}
+
+	@Override
+	public Slice<LoanDTO> findDTOSliceByFilter(LoanFilterDTO filter, Pageable pageable) {
+		return CriteriaPages.slice(dtos(filter, pageable), pageable);
+	}
+
+	/**
+	 * Same as {@link LoanRepository#SELECT_LOAN_DTO}: no managed entities or snapshots.
+	 */
+	private TypedQuery<LoanDTO> dtos(LoanFilterDTO filter, Pageable pageable) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<LoanDTO> query = cb.createQuery(LoanDTO.class);
+		Root<Loan> loan = query.from(Loan.class);
+		Join<Loan, Book> book = loan.join("book");
+		query.select(cb.construct(LoanDTO.class, loan.get("id"), loan.get("customer"), loan.get("customerEmail"),
+					book.get("id"), book.get("title"), book.get("author"), book.get("isbn")))
+			.where(predicates(cb, filter, loan, () -> book).toArray(new Predicate[0]))
+			.orderBy(QueryUtils.toOrders(pageable.getSort(), loan, cb));
+		return entityManager.createQuery(query);
+	}
+
+	/**
+	 * Book is only joined when filtering by isbn.
+	 */
+	private long count(LoanFilterDTO filter) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Long> query = cb.createQuery(Long.class);
+		Root<Loan> loan = query.from(Loan.class);
+		query.select(CriteriaPages.countRows(cb))
+			.where(predicates(cb, filter, loan, () -> loan.<Loan, Book>join("book")).toArray(new Predicate[0]));
+		return entityManager.createQuery(query).getSingleResult();
+	}
+
+	private static List<Predicate> predicates(CriteriaBuilder cb, LoanFilterDTO filter, Root<Loan> loan,
+			Supplier<Join<Loan, Book>> book) {
+		List<Predicate> predicates = new ArrayList<>();
+		if (StringUtils.hasText(filter.getIsbn())) {
+			predicates.add(cb.equal(book.get().get("isbn"), filter.getIsbn()));
+		}
+		if (StringUtils.hasText(filter.getCustomer())) {
+			predicates.add(cb.equal(loan.get("customer"), filter.getCustomer()));
+		}
+		if (filter.getLoanDateFrom() != null) {
+			predicates.add(cb.greaterThanOrEqualTo(loan.get("loanDate"), filter.getLoanDateFrom()));
+		}
+		if (filter.getLoanDateTo() != null) {
+			predicates.add(cb.lessThanOrEqualTo(loan.get("loanDate"), filter.getLoanDateTo()));
+		}
+		return predicates;
+	}
+
+}
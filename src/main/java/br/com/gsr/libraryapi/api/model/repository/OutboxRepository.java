@@ -0,0 +1,50 @@
+package br.com.gsr.libraryapi.api.model.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import br.com.gsr.libraryapi.api.model.entity.OutboxMessage;
+
+public interface OutboxRepository extends JpaRepository<OutboxMessage, Long> {
+
+	@Query(value = "select m.id from OutboxMessage m where (m.leasedUntil is null or m.leasedUntil < :now) "
+			+ "and m.attempts < :maxAttempts order by m.id")
+	List<Long> findClaimableIds(@Param("now") LocalDateTime now, @Param("maxAttempts") int maxAttempts, Pageable pageable);
+
+	/**
+	 * Leases the rows among {@code ids} that are still free. Rows another drainer leased
+	 * since they were read are skipped, since the condition no longer holds for them.
+	 */
+	@Modifying
+	@Query(value = "update OutboxMessage m set m.leasedBy = :owner, m.leasedUntil = :until "
+			+ "where m.id in :ids and (m.leasedUntil is null or m.leasedUntil < :now)")
+	int claim(@Param("ids") Collection<Long> ids, @Param("owner") String owner, @Param("until") LocalDateTime until,
+			@Param("now") LocalDateTime now);
+
+	List<OutboxMessage> findByLeasedByOrderById(String leasedBy);
+
+	/**
+	 * Deletes sent rows still leased by {@code owner}. A row whose lease expired and was
+	 * claimed by another drainer is left to that drainer.
+	 */
+	@Modifying
+	@Query(value = "delete from OutboxMessage m where m.id in :ids and m.leasedBy = :owner")
+	int acknowledge(@Param("ids") Collection<Long> ids, @Param("owner") String owner);
+
+	/**
+	 * Gives leased rows back after a failed send. The lease expiry is kept, so the rows
+	 * are only retried once it passes.
+	 */
+	@Modifying
+	@Query(value = "update OutboxMessage m set m.leasedBy = null, m.attempts = m.attempts + 1 "
+			+ "where m.id in :ids and m.leasedBy = :owner")
+	int release(@Param("ids") Collection<Long> ids, @Param("owner") String owner);
+
+}
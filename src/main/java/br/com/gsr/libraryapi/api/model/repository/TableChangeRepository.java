@@ -0,0 +1,33 @@
+package br.com.gsr.libraryapi.api.model.repository;
+
+import java.util.Collection;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import br.com.gsr.libraryapi.api.model.entity.TableChange;
+
+public interface TableChangeRepository extends JpaRepository<TableChange, String> {
+
+	@Transactional
+	@Modifying
+	@Query(value = "update TableChange c set c.changes = c.changes + 1 where c.slot = :slot")
+	int increment(@Param("slot") String slot);
+
+	/**
+	 * Plain insert, failing on a duplicate slot, where a save would merge into the row
+	 * of the node that created it first.
+	 */
+	@Transactional
+	@Modifying
+	@Query(value = "insert into table_change (slot, table_name, changes) values (:slot, :table, :changes)",
+			nativeQuery = true)
+	int insert(@Param("slot") String slot, @Param("table") String table, @Param("changes") long changes);
+
+	@Query(value = "select coalesce(sum(c.changes), 0) from TableChange c where c.tableName in :tables")
+	long sumChanges(@Param("tables") Collection<String> tables);
+
+}
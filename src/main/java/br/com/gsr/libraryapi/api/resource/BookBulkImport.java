@@ -0,0 +1,102 @@
+package br.com.gsr.libraryapi.api.resource;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.validation.Validator;
+
+import br.com.gsr.libraryapi.api.dto.BookDTO;
+import br.com.gsr.libraryapi.api.dto.BulkItemResultDTO;
+import br.com.gsr.libraryapi.api.dto.BulkItemResultDTO.Status;
+import br.com.gsr.libraryapi.api.mapper.BookMapper;
+import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.exception.BusinessException;
+import br.com.gsr.libraryapi.service.BookService;
+
+/**
+ * State of one {@code POST /api/books/bulk} request. Items are validated and checked
+ * for isbns repeated in the request as they are read; the valid ones are saved
+ * {@link #CHUNK_SIZE} at a time, each chunk in its own transaction.
+ */
+final class BookBulkImport {
+
+	static final int CHUNK_SIZE = 1_000;
+
+	private final BookService service;
+	private final BookMapper mapper;
+	private final Validator validator;
+
+	private final List<BulkItemResultDTO> results = new ArrayList<>();
+	private final Set<String> isbns = new HashSet<>();
+	private final Map<Integer, BookDTO> pending = new LinkedHashMap<>();
+
+	BookBulkImport(BookService service, BookMapper mapper, Validator validator) {
+		this.service = service;
+		this.mapper = mapper;
+		this.validator = validator;
+	}
+
+	void add(int index, BookDTO dto) {
+		if (dto == null) {
+			malformed(index);
+			return;
+		}
+		List<String> errors = Violations.messages(validator.validate(dto));
+		if (!errors.isEmpty()) {
+			results.add(BulkItemResultDTO.failed(index, Status.INVALID, errors));
+		} else if (!isbns.add(dto.getIsbn())) {
+			results.add(BulkItemResultDTO.failed(index, Status.DUPLICATE, "Isbn repetido na requisição."));
+		} else {
+			pending.put(index, dto);
+			if (pending.size() == CHUNK_SIZE) {
+				flush();
+			}
+		}
+	}
+
+	void malformed(int index) {
+		results.add(BulkItemResultDTO.failed(index, Status.INVALID, "Malformed JSON."));
+	}
+
+	List<BulkItemResultDTO> finish() {
+		flush();
+		results.sort(Comparator.comparingInt(BulkItemResultDTO::getIndex));
+		return results;
+	}
+
+	private void flush() {
+		if (pending.isEmpty()) {
+			return;
+		}
+		Map<Integer, Book> books = new LinkedHashMap<>();
+		pending.forEach((index, dto) -> books.put(index, toNewBook(dto)));
+		try {
+			service.saveAll(new ArrayList<>(books.values()));
+			books.forEach((index, book) -> results.add(book.getId() == null
+					? BulkItemResultDTO.failed(index, Status.DUPLICATE, "Isbn já cadastrado.")
+					: BulkItemResultDTO.succeeded(index, Status.CREATED, book.getId())));
+		} catch (BusinessException ex) {
+			// an isbn of the chunk was registered concurrently, find out which one by saving one at a time
+			pending.forEach((index, dto) -> {
+				try {
+					results.add(BulkItemResultDTO.succeeded(index, Status.CREATED, service.save(toNewBook(dto)).getId()));
+				} catch (BusinessException duplicated) {
+					results.add(BulkItemResultDTO.failed(index, Status.DUPLICATE, duplicated.getMessage()));
+				}
+			});
+		}
+		pending.clear();
+	}
+
+	private Book toNewBook(BookDTO dto) {
+		Book book = mapper.toEntity(dto);
+		book.setId(null);
+		return book;
+	}
+
+}
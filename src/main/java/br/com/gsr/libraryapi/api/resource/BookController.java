@@ -1,15 +1,18 @@
 package br.com.gsr.libraryapi.api.resource;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import javax.validation.Valid;
+import javax.validation.Validator;
 
-import org.modelmapper.ModelMapper;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -17,15 +20,29 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import br.com.gsr.libraryapi.api.dto.BookDTO;
+import br.com.gsr.libraryapi.api.dto.BulkItemResultDTO;
+import br.com.gsr.libraryapi.api.dto.CursorPageDTO;
 import br.com.gsr.libraryapi.api.dto.LoanDTO;
+import br.com.gsr.libraryapi.api.dto.SliceDTO;
+import br.com.gsr.libraryapi.api.mapper.BookMapper;
 import br.com.gsr.libraryapi.api.model.entity.Book;
-import br.com.gsr.libraryapi.api.model.entity.Loan;
+import br.com.gsr.libraryapi.service.BookSearchService;
 import br.com.gsr.libraryapi.service.BookService;
+import br.com.gsr.libraryapi.service.BookSuggestService;
 import br.com.gsr.libraryapi.service.LoanService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -35,81 +52,172 @@ import io.swagger.annotations.ApiOperation;
 @Api("Book API")
 public class BookController {
 	
+	private static final int MAX_SEARCH_RESULTS = 100;
+	private static final String NDJSON = "application/x-ndjson";
+	
 	private BookService bookService;
 	private LoanService loanService;
-	private ModelMapper mapper;
+	private BookSearchService searchService;
+	private BookSuggestService suggestService;
+	private BookMapper bookMapper;
+	private ObjectReader bookReader;
+	private ObjectWriter bookWriter;
+	private Validator validator;
 	
-	public BookController(BookService bookService, ModelMapper mapper, LoanService loanService) {
+	public BookController(BookService bookService, LoanService loanService, BookSearchService searchService,
+			BookSuggestService suggestService, BookMapper bookMapper, ObjectMapper objectMapper,
+			Validator validator) {
 		this.bookService = bookService;
 		this.loanService = loanService;
-		this.mapper = mapper;
+		this.searchService = searchService;
+		this.suggestService = suggestService;
+		this.bookMapper = bookMapper;
+		this.bookReader = objectMapper.readerFor(BookDTO.class);
+		this.bookWriter = objectMapper.writerFor(BookDTO.class);
+		this.validator = validator;
 	}
 
 	@PostMapping
 	@ResponseStatus(HttpStatus.CREATED)
 	@ApiOperation("Creates a book")
 	public BookDTO create(@RequestBody @Valid BookDTO dto) {
-		Book entity = mapper.map(dto, Book.class);
+		Book entity = bookMapper.toEntity(dto);
 		entity = bookService.save(entity);
-		return mapper.map(entity, BookDTO.class);
+		return bookMapper.toDTO(entity);
 	}
 	
-	@GetMapping("/{id}")
+	@PostMapping(value = "/bulk", consumes = { MediaType.APPLICATION_JSON_VALUE, NDJSON })
 	@ResponseStatus(HttpStatus.OK)
+	@ApiOperation("Creates books from a JSON array or NDJSON, reporting the outcome of each item")
+	public List<BulkItemResultDTO> bulkCreate(InputStream body) throws IOException {
+		BookBulkImport bulkImport = new BookBulkImport(bookService, bookMapper, validator);
+		try (MappingIterator<BookDTO> items = bookReader.readValues(body)) {
+			for (int index = 0;; index++) {
+				BookDTO dto;
+				try {
+					if (!items.hasNextValue()) {
+						break;
+					}
+					dto = items.nextValue();
+				} catch (JsonProcessingException ex) {
+					// the rest of the stream cannot be resynchronized
+					bulkImport.malformed(index);
+					break;
+				}
+				bulkImport.add(index, dto);
+			}
+		}
+		return bulkImport.finish();
+	}
+	
+	@GetMapping("/{id}")
 	@ApiOperation("Obtains a book details by id")
-	public BookDTO get(@PathVariable Long id) {
-		
-		return bookService
-				.getById(id)
-				.map( book -> mapper.map(book, BookDTO.class))
-				.orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+	public ResponseEntity<BookDTO> get(@PathVariable Long id, ServletWebRequest request) {
+		// the ETag is checked against the same, possibly cached, book that is served
+		Book book = bookService.getById(id).orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+		if (request.checkNotModified(ETags.of(book.getVersion()))) {
+			return null;
+		}
+		return ResponseEntity.ok()
+				.eTag(ETags.of(book.getVersion()))
+				.body(bookMapper.toDTO(book));
 	}
 	
 	@DeleteMapping("/{id}")
 	@ResponseStatus(HttpStatus.NO_CONTENT)
 	@ApiOperation("Deletes a book by operation")
 	public void delete(@PathVariable Long id) {
-		Book book = bookService.getById(id).orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
-		bookService.delete(book);
+		if (!bookService.deleteById(id)) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+		}
 	}
 	
 	@PutMapping("/{id}")
 	@ResponseStatus(HttpStatus.OK)
 	@ApiOperation("Updates a book")
 	public BookDTO update(@PathVariable Long id, @RequestBody @Valid BookDTO dto) {
-		return bookService.getById(id).map(book -> {
-			book.setAuthor(dto.getAuthor());
-			book.setTitle(dto.getTitle());
-			book = bookService.update(book);
-			return mapper.map(book, BookDTO.class);
-		}) .orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
+		return bookService.updateTitleAndAuthor(id, dto.getTitle(), dto.getAuthor())
+				.map(bookMapper::toDTO)
+				.orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
 	}
 	
 	@GetMapping
 	@ApiOperation("Find book by params")
-	public Page<BookDTO> find(BookDTO dto, Pageable pageRequest) {
-		Book filter = mapper.map(dto, Book.class);
-		Page<Book> result = bookService.find(filter, pageRequest);
-		List<BookDTO> list = result.getContent().stream().map( entity -> mapper.map(entity, BookDTO.class)).collect(Collectors.toList());
-		return new PageImpl<>(list, pageRequest, result.getTotalElements());
+	public ResponseEntity<Slice<BookDTO>> find(BookDTO dto, Pageable pageRequest,
+			@RequestParam(defaultValue = "true") boolean withTotal, ServletWebRequest request) {
+		Book filter = bookMapper.toEntity(dto);
+		String etag = ETags.of(bookService.getChangeCount(), request);
+		if (request.checkNotModified(etag)) {
+			return null;
+		}
+		Slice<BookDTO> result;
+		if (!withTotal) {
+			Slice<BookDTO> slice = bookService.findDTOSlice(filter, pageRequest);
+			result = new SliceDTO<>(slice.getContent(), pageRequest, slice.hasNext());
+		} else {
+			result = bookService.findDTO(filter, pageRequest);
+		}
+		return ResponseEntity.ok().eTag(etag).body(result);
+	}
+	
+	@GetMapping(params = "after")
+	@ApiOperation("Find book by params using a keyset cursor")
+	public CursorPageDTO<BookDTO> findAfter(BookDTO dto, @RequestParam String after, @RequestParam(defaultValue = "20") int size) {
+		int limit = Cursors.limit(size);
+		List<Book> result = bookService.findAfter(bookMapper.toEntity(dto), Cursors.decode(after), limit + 1);
+		return Cursors.page(result, limit, Book::getId, bookMapper::toDTO);
+	}
+	
+	@GetMapping("/stream")
+	@ApiOperation("Streams every book matching the params as NDJSON, in id order")
+	public ResponseEntity<StreamingResponseBody> stream(BookDTO dto) {
+		Book filter = bookMapper.toEntity(dto);
+		StreamingResponseBody body = outputStream -> KeysetStreams.write(outputStream, bookWriter,
+				(afterId, limit) -> bookService.findAfter(filter, afterId, limit), Book::getId, bookMapper::toDTO);
+		return ResponseEntity.ok()
+				.contentType(MediaType.parseMediaType(NDJSON))
+				.body(body);
+	}
+	
+	@GetMapping("/search")
+	@ApiOperation("Full-text search on title, author and isbn, ordered by relevance")
+	public List<BookDTO> search(@RequestParam String q, @RequestParam(defaultValue = "20") int limit) {
+		if (limit < 1) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid limit");
+		}
+		return searchService.search(q, Math.min(limit, MAX_SEARCH_RESULTS))
+				.stream()
+				.map(bookMapper::toDTO)
+				.collect(Collectors.toList());
+	}
+	
+	@GetMapping("/suggest")
+	@ApiOperation("Completes a partially typed title or author")
+	public List<String> suggest(@RequestParam String q, @RequestParam(defaultValue = "10") int limit) {
+		if (limit < 1) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid limit");
+		}
+		return suggestService.suggest(q, limit);
 	}
 	
 	@GetMapping("{id}/loans")
 	@ApiOperation("Find loans by book")
-	public Page<LoanDTO> loansByBook( @PathVariable Long id, Pageable pageable ) {
-		Book book = bookService.getById(id)
+	public ResponseEntity<Slice<LoanDTO>> loansByBook( @PathVariable Long id, Pageable pageable,
+			@RequestParam(defaultValue = "true") boolean withTotal, ServletWebRequest request ) {
+		bookService.getVersion(id)
 				.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND) );
+		String etag = ETags.of(loanService.getChangeCount(), request);
+		if (request.checkNotModified(etag)) {
+			return null;
+		}
 	
-		Page<Loan> result = loanService.getLoansByBook(book, pageable);
-		List<LoanDTO> list = result.getContent()
-			.stream()
-			.map( loan -> {
-				Book loanBook = loan.getBook();
-				BookDTO bookDTO = mapper.map(loanBook, BookDTO.class);
-				LoanDTO loanDTO = mapper.map(loan, LoanDTO.class);
-				loanDTO.setBook(bookDTO);
-				return loanDTO;
-			}).collect(Collectors.toList());
-		return new PageImpl<LoanDTO>(list, pageable, list.size());
+		Slice<LoanDTO> result;
+		if (!withTotal) {
+			Slice<LoanDTO> slice = loanService.getLoanDTOSliceByBook(id, pageable);
+			result = new SliceDTO<>(slice.getContent(), pageable, slice.hasNext());
+		} else {
+			result = loanService.getLoanDTOsByBook(id, pageable);
+		}
+		return ResponseEntity.ok().eTag(etag).body(result);
 	}
 }
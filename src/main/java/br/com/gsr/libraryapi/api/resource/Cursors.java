@@ -0,0 +1,60 @@
+package br.com.gsr.libraryapi.api.resource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import br.com.gsr.libraryapi.api.dto.CursorPageDTO;
+
+/**
+ * Opaque keyset cursors: the last id of a page, base64url encoded.
+ * An empty cursor starts from the beginning.
+ */
+final class Cursors {
+
+	static final int MAX_PAGE_SIZE = 2000;
+
+	private Cursors() {
+	}
+
+	static long decode(String cursor) {
+		if (cursor == null || cursor.isEmpty()) {
+			return 0L;
+		}
+		try {
+			return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+		} catch (IllegalArgumentException ex) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+		}
+	}
+
+	static String encode(Long id) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+	}
+
+	static int limit(int size) {
+		if (size < 1) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid page size");
+		}
+		return Math.min(size, MAX_PAGE_SIZE);
+	}
+
+	/**
+	 * Builds a page from rows fetched with one extra element, which only signals
+	 * that a next page exists.
+	 */
+	static <E, D> CursorPageDTO<D> page(List<E> rows, int limit, Function<E, Long> idOf, Function<E, D> mapper) {
+		boolean hasNext = rows.size() > limit;
+		List<E> pageRows = hasNext ? rows.subList(0, limit) : rows;
+		List<D> content = new ArrayList<>(pageRows.size());
+		pageRows.forEach(row -> content.add(mapper.apply(row)));
+		String nextCursor = hasNext ? encode(idOf.apply(pageRows.get(pageRows.size() - 1))) : null;
+		return new CursorPageDTO<>(content, nextCursor);
+	}
+
+}
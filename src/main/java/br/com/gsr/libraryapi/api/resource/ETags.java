@@ -0,0 +1,30 @@
+package br.com.gsr.libraryapi.api.resource;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/**
+ * Strong ETags computed from versions and table write counts, so a conditional GET
+ * can be answered before the body is read, mapped or serialized.
+ */
+final class ETags {
+
+	private ETags() {
+	}
+
+	static String of(Long version) {
+		return "\"" + version + "\"";
+	}
+
+	/**
+	 * A listing also depends on the page, size, sort and filter of the request, so they
+	 * are hashed in with the count of writes to its tables.
+	 */
+	static String of(long changes, ServletWebRequest request) {
+		String source = changes + "?" + request.getRequest().getQueryString();
+		return "\"" + DigestUtils.md5DigestAsHex(source.getBytes(StandardCharsets.UTF_8)) + "\"";
+	}
+
+}
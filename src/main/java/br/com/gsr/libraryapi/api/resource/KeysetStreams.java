@@ -0,0 +1,48 @@
+package br.com.gsr.libraryapi.api.resource;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Writes a whole result as NDJSON, one keyset chunk at a time. The next chunk is only
+ * read once the previous one has been flushed, so a slow client blocks the write and
+ * holds back the database reads instead of the rows piling up in memory.
+ */
+final class KeysetStreams {
+
+	static final int CHUNK_SIZE = 500;
+
+	private KeysetStreams() {
+	}
+
+	/**
+	 * @param chunks rows after the given id, in id order, at most as many as the given limit
+	 */
+	static <E, D> void write(OutputStream outputStream, ObjectWriter json, BiFunction<Long, Integer, List<E>> chunks,
+			Function<E, Long> id, Function<E, D> toDTO) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		long afterId = 0L;
+		List<E> chunk;
+		do {
+			chunk = chunks.apply(afterId, CHUNK_SIZE);
+			for (E row : chunk) {
+				out.write(json.writeValueAsString(toDTO.apply(row)));
+				out.write('\n');
+			}
+			out.flush();
+			if (!chunk.isEmpty()) {
+				afterId = id.apply(chunk.get(chunk.size() - 1));
+			}
+		} while (chunk.size() == CHUNK_SIZE);
+	}
+
+}
@@ -1,30 +1,56 @@
 package br.com.gsr.libraryapi.api.resource;
 
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import org.modelmapper.ModelMapper;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
+import javax.validation.Validator;
+
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
-import br.com.gsr.libraryapi.api.dto.BookDTO;
+import br.com.gsr.libraryapi.api.dto.BulkItemResultDTO;
+import br.com.gsr.libraryapi.api.dto.BulkItemResultDTO.Status;
+import br.com.gsr.libraryapi.api.dto.BulkReturnedLoanDTO;
+import br.com.gsr.libraryapi.api.dto.CursorPageDTO;
 import br.com.gsr.libraryapi.api.dto.LoanDTO;
 import br.com.gsr.libraryapi.api.dto.LoanFilterDTO;
 import br.com.gsr.libraryapi.api.dto.ReturnedLoanDTO;
+import br.com.gsr.libraryapi.api.dto.SliceDTO;
+import br.com.gsr.libraryapi.api.mapper.LoanMapper;
 import br.com.gsr.libraryapi.api.model.entity.Book;
 import br.com.gsr.libraryapi.api.model.entity.Loan;
+import br.com.gsr.libraryapi.exception.BusinessException;
 import br.com.gsr.libraryapi.service.BookService;
 import br.com.gsr.libraryapi.service.LoanService;
 
@@ -32,15 +58,22 @@ import br.com.gsr.libraryapi.service.LoanService;
 @RequestMapping("/api/loans")
 public class LoanController {
 
+	private static final int MAX_BULK_ITEMS = 1_000;
+
 	private BookService bookService;
 	private LoanService loanService;
-	private ModelMapper mapper;
+	private LoanMapper mapper;
+	private ObjectWriter json;
+	private Validator validator;
 	
-	public LoanController(BookService bookService, LoanService loanService, ModelMapper mapper) {
+	public LoanController(BookService bookService, LoanService loanService, LoanMapper mapper, ObjectMapper objectMapper,
+			Validator validator) {
 
 		this.bookService = bookService;
 		this.loanService = loanService;
 		this.mapper = mapper;
+		this.json = objectMapper.writerFor(LoanDTO.class);
+		this.validator = validator;
 	}
 	
 	@PostMapping
@@ -52,35 +85,200 @@ public class LoanController {
 		Loan entity = Loan.builder()
 				.book(book)
 				.customer(dto.getCustomer())
+				.customerEmail(dto.getEmail())
 				.loanDate(LocalDate.now())
 				.build();
 		entity = loanService.save(entity);
 		return entity.getId();
 	}
 	
+	@PostMapping("/bulk")
+	@ResponseStatus(HttpStatus.OK)
+	public List<BulkItemResultDTO> bulkCreate(@RequestBody List<LoanDTO> dtos) {
+		checkBulkSize(dtos);
+		BulkItemResultDTO[] results = new BulkItemResultDTO[dtos.size()];
+		Map<Integer, LoanDTO> candidates = new LinkedHashMap<>();
+		Set<String> isbns = new HashSet<>();
+		for (int index = 0; index < dtos.size(); index++) {
+			LoanDTO dto = dtos.get(index);
+			if (dto == null) {
+				results[index] = BulkItemResultDTO.failed(index, Status.INVALID, "Missing loan.");
+				continue;
+			}
+			List<String> errors = new ArrayList<>(Violations.messages(validator.validateProperty(dto, "isbn")));
+			errors.addAll(Violations.messages(validator.validateProperty(dto, "customer")));
+			if (!errors.isEmpty()) {
+				results[index] = BulkItemResultDTO.failed(index, Status.INVALID, errors);
+			} else if (!isbns.add(dto.getIsbn())) {
+				results[index] = BulkItemResultDTO.failed(index, Status.DUPLICATE, "Isbn repetido na requisição.");
+			} else {
+				candidates.put(index, dto);
+			}
+		}
+		
+		Map<String, Book> books = bookService.getBooksByIsbn(isbns)
+				.stream()
+				.collect(Collectors.toMap(Book::getIsbn, Function.identity()));
+		Map<Integer, Loan> loans = new LinkedHashMap<>();
+		candidates.forEach((index, dto) -> {
+			Book book = books.get(dto.getIsbn());
+			if (book == null) {
+				results[index] = BulkItemResultDTO.failed(index, Status.INVALID, "Book not found for informed isbn");
+			} else {
+				loans.put(index, newLoan(book, dto));
+			}
+		});
+		
+		try {
+			loanService.saveAll(new ArrayList<>(loans.values()));
+			loans.forEach((index, loan) -> results[index] = loan.getId() == null
+					? BulkItemResultDTO.failed(index, Status.INVALID, "Book already loaned.")
+					: BulkItemResultDTO.succeeded(index, Status.CREATED, loan.getId()));
+		} catch (BusinessException ex) {
+			// a book of the batch was loaned concurrently, find out which one by saving one at a time
+			loans.forEach((index, loan) -> {
+				try {
+					Loan saved = loanService.save(newLoan(loan.getBook(), candidates.get(index)));
+					results[index] = BulkItemResultDTO.succeeded(index, Status.CREATED, saved.getId());
+				} catch (BusinessException loaned) {
+					results[index] = BulkItemResultDTO.failed(index, Status.INVALID, loaned.getMessage());
+				}
+			});
+		}
+		return Arrays.asList(results);
+	}
+	
+	@PatchMapping("/bulk")
+	@ResponseStatus(HttpStatus.OK)
+	public List<BulkItemResultDTO> bulkReturn(@RequestBody List<BulkReturnedLoanDTO> dtos) {
+		checkBulkSize(dtos);
+		BulkItemResultDTO[] results = new BulkItemResultDTO[dtos.size()];
+		Map<Long, Integer> indexById = new LinkedHashMap<>();
+		Map<Long, Boolean> returnedById = new LinkedHashMap<>();
+		for (int index = 0; index < dtos.size(); index++) {
+			BulkReturnedLoanDTO dto = dtos.get(index);
+			if (dto == null) {
+				results[index] = BulkItemResultDTO.failed(index, Status.INVALID, "Missing loan.");
+				continue;
+			}
+			List<String> errors = Violations.messages(validator.validate(dto));
+			if (!errors.isEmpty()) {
+				results[index] = BulkItemResultDTO.failed(index, Status.INVALID, errors);
+			} else if (indexById.putIfAbsent(dto.getId(), index) != null) {
+				results[index] = BulkItemResultDTO.failed(index, Status.DUPLICATE, "Loan repetido na requisição.");
+			} else {
+				returnedById.put(dto.getId(), dto.getReturned());
+			}
+		}
+		
+		try {
+			loanService.updateReturned(returnedById)
+				.forEach(loan -> {
+					int index = indexById.get(loan.getId());
+					results[index] = BulkItemResultDTO.succeeded(index, Status.UPDATED, loan.getId());
+				});
+		} catch (BusinessException ex) {
+			// reopening a loan conflicted with another open loan of its book, update one at a time
+			returnedById.forEach((id, returned) -> {
+				int index = indexById.get(id);
+				try {
+					if (loanService.updateReturned(id, returned)) {
+						results[index] = BulkItemResultDTO.succeeded(index, Status.UPDATED, id);
+					}
+				} catch (BusinessException loaned) {
+					results[index] = BulkItemResultDTO.failed(index, Status.INVALID, loaned.getMessage());
+				}
+			});
+		}
+		indexById.forEach((id, index) -> {
+			if (results[index] == null) {
+				results[index] = BulkItemResultDTO.failed(index, Status.NOT_FOUND, "Loan not found");
+			}
+		});
+		return Arrays.asList(results);
+	}
+	
 	@PatchMapping("/{id}")
 	@ResponseStatus(HttpStatus.OK)
 	public void returnBook(@PathVariable Long id, @RequestBody ReturnedLoanDTO dto) {
-		Loan loan = loanService.getById(id).orElseThrow(() ->  new ResponseStatusException(HttpStatus.NOT_FOUND, "Loan not found"));
-		loan.setReturned(dto.getReturned());
-		loanService.update(loan);
+		if (!loanService.updateReturned(id, dto.getReturned())) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Loan not found");
+		}
 	}
 	
 	@GetMapping
+	public ResponseEntity<Slice<LoanDTO>> find (LoanFilterDTO dto, Pageable pageable,
+			@RequestParam(defaultValue = "true") boolean withTotal, ServletWebRequest request) {
+		String etag = ETags.of(this.loanService.getChangeCount(), request);
+		if (request.checkNotModified(etag)) {
+			return null;
+		}
+		Slice<LoanDTO> result;
+		if (!withTotal) {
+			Slice<LoanDTO> slice = this.loanService.findDTOSlice(dto, pageable);
+			result = new SliceDTO<>(slice.getContent(), pageable, slice.hasNext());
+		} else {
+			result = this.loanService.findDTO(dto, pageable);
+		}
+		return ResponseEntity.ok().eTag(etag).body(result);
+	}
+	
+	@GetMapping(params = "after")
 	@ResponseStatus(HttpStatus.OK)
-	public Page<LoanDTO> find (LoanFilterDTO dto, Pageable pageable) {
-		Page<Loan> result = this.loanService.find(dto, pageable);
-		List<LoanDTO> loans = result
-			.getContent()
-			.stream()
-			.map( entity -> {
-				Book book = entity.getBook();
-				BookDTO bookDTO = mapper.map(book, BookDTO.class);
-				LoanDTO loanDTO = mapper.map(entity, LoanDTO.class);
-				loanDTO.setBook(bookDTO);
-				return loanDTO;
-			}).collect(Collectors.toList());
-		return new PageImpl<LoanDTO>(loans, pageable, result.getTotalElements());
+	public CursorPageDTO<LoanDTO> findAfter(LoanFilterDTO dto, @RequestParam String after, @RequestParam(defaultValue = "20") int size) {
+		int limit = Cursors.limit(size);
+		List<Loan> result = loanService.findAfter(dto, Cursors.decode(after), limit + 1);
+		return Cursors.page(result, limit, Loan::getId, mapper::toDTO);
+	}
+	
+	/**
+	 * Unlike the export, filtered and read in keyset chunks, so it can serve many
+	 * concurrent readers.
+	 */
+	@GetMapping("/stream")
+	public ResponseEntity<StreamingResponseBody> stream(LoanFilterDTO dto) {
+		StreamingResponseBody body = outputStream -> KeysetStreams.write(outputStream, json,
+				(afterId, limit) -> loanService.findAfter(dto, afterId, limit), Loan::getId, mapper::toDTO);
+		return ResponseEntity.ok()
+				.contentType(LoanExportFormat.NDJSON.getMediaType())
+				.body(body);
+	}
+	
+	@GetMapping("/export")
+	public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "ndjson") String format) {
+		LoanExportFormat exportFormat = Arrays.stream(LoanExportFormat.values())
+				.filter(candidate -> candidate.name().equalsIgnoreCase(format))
+				.findFirst()
+				.orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid export format"));
+		
+		StreamingResponseBody body = outputStream -> {
+			Writer out = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+			exportFormat.writeHeader(out);
+			loanService.exportLoans(loan -> exportFormat.writeRowUnchecked(out, json, mapper.toDTO(loan)));
+			out.flush();
+		};
+		return ResponseEntity.ok()
+				.contentType(exportFormat.getMediaType())
+				.header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+						.filename("loans." + exportFormat.name().toLowerCase())
+						.build()
+						.toString())
+				.body(body);
+	}
+	
+	private static void checkBulkSize(List<?> items) {
+		if (items.size() > MAX_BULK_ITEMS) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_BULK_ITEMS + " items per request");
+		}
+	}
+	
+	private static Loan newLoan(Book book, LoanDTO dto) {
+		return Loan.builder()
+				.book(book)
+				.customer(dto.getCustomer())
+				.customerEmail(dto.getEmail())
+				.loanDate(LocalDate.now())
+				.build();
 	}
 	
 }
@@ -0,0 +1,89 @@
+package br.com.gsr.libraryapi.api.resource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import br.com.gsr.libraryapi.api.dto.LoanDTO;
+
+/**
+ * Row formats of {@code GET /api/loans/export}. Each row is written as soon as it is
+ * mapped, nothing is buffered besides the writer itself.
+ */
+enum LoanExportFormat {
+
+	NDJSON(MediaType.parseMediaType("application/x-ndjson")) {
+		@Override
+		void writeRow(Writer out, ObjectWriter json, LoanDTO loan) throws IOException {
+			out.write(json.writeValueAsString(loan));
+			out.write('\n');
+		}
+	},
+
+	CSV(MediaType.parseMediaType("text/csv;charset=UTF-8")) {
+		@Override
+		void writeHeader(Writer out) throws IOException {
+			out.write("id,customer,email,book_id,isbn,title,author\r\n");
+		}
+
+		@Override
+		void writeRow(Writer out, ObjectWriter json, LoanDTO loan) throws IOException {
+			out.write(String.valueOf(loan.getId()));
+			out.write(',');
+			out.write(escape(loan.getCustomer()));
+			out.write(',');
+			out.write(escape(loan.getEmail()));
+			out.write(',');
+			out.write(String.valueOf(loan.getBook().getId()));
+			out.write(',');
+			out.write(escape(loan.getBook().getIsbn()));
+			out.write(',');
+			out.write(escape(loan.getBook().getTitle()));
+			out.write(',');
+			out.write(escape(loan.getBook().getAuthor()));
+			out.write("\r\n");
+		}
+	};
+
+	private final MediaType mediaType;
+
+	LoanExportFormat(MediaType mediaType) {
+		this.mediaType = mediaType;
+	}
+
+	MediaType getMediaType() {
+		return mediaType;
+	}
+
+	void writeHeader(Writer out) throws IOException {
+	}
+
+	abstract void writeRow(Writer out, ObjectWriter json, LoanDTO loan) throws IOException;
+
+	void writeRowUnchecked(Writer out, ObjectWriter json, LoanDTO loan) {
+		try {
+			writeRow(out, json, loan);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * RFC 4180 quoting: fields with a comma, quote or line break are quoted and
+	 * quotes are doubled.
+	 */
+	static String escape(String value) {
+		if (value == null) {
+			return "";
+		}
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			return value;
+		}
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+
+}
@@ -0,0 +1,24 @@
+package br.com.gsr.libraryapi.api.resource;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.validation.ConstraintViolation;
+
+/**
+ * Bean validation messages of a bulk item, in the form "isbn must not be empty".
+ */
+final class Violations {
+
+	private Violations() {
+	}
+
+	static <T> List<String> messages(Set<ConstraintViolation<T>> violations) {
+		return violations.stream()
+				.map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+				.sorted()
+				.collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,125 @@
+package br.com.gsr.libraryapi.config;
+
+import java.util.Map;
+
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.cache.spi.support.RegionFactoryTemplate;
+import org.hibernate.cache.spi.support.StorageAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Hibernate second-level cache regions held in local Caffeine caches. Each region is
+ * sized and expired by the Caffeine spec in {@code hibernate.cache.caffeine.spec.<region>},
+ * falling back to {@code hibernate.cache.caffeine.spec}; both are set through
+ * {@code spring.jpa.properties}.
+ * <p>
+ * Nothing invalidates the regions of other nodes, so writes there show up only once the
+ * entries expire: specs should expire after write, as access keeps hot entries alive.
+ */
+public class CaffeineRegionFactory extends RegionFactoryTemplate {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String SPEC = "hibernate.cache.caffeine.spec";
+	static final String DEFAULT_SPEC = "maximumSize=10000";
+
+	private transient Map<?, ?> settings;
+
+	@Override
+	protected void prepareForUse(SessionFactoryOptions options, @SuppressWarnings("rawtypes") Map configValues) {
+		this.settings = configValues;
+	}
+
+	@Override
+	protected void releaseFromUse() {
+		this.settings = null;
+	}
+
+	@Override
+	protected DomainDataStorageAccess createDomainDataStorageAccess(DomainDataRegionConfig regionConfig,
+			DomainDataRegionBuildingContext buildingContext) {
+		return new CaffeineStorageAccess(Caffeine.from(spec(regionConfig.getRegionName())).build());
+	}
+
+	@Override
+	protected StorageAccess createQueryResultsRegionStorageAccess(String regionName,
+			SessionFactoryImplementor sessionFactory) {
+		return new CaffeineStorageAccess(Caffeine.from(spec(regionName)).build());
+	}
+
+	/**
+	 * Never evicted: a missing timestamp would let the query cache serve results read
+	 * before the last write to their tables.
+	 */
+	@Override
+	protected StorageAccess createTimestampsRegionStorageAccess(String regionName,
+			SessionFactoryImplementor sessionFactory) {
+		return new CaffeineStorageAccess(Caffeine.newBuilder().build());
+	}
+
+	private String spec(String regionName) {
+		Object spec = settings.get(SPEC + "." + regionName);
+		if (spec == null) {
+			spec = settings.get(SPEC);
+		}
+		return spec == null ? DEFAULT_SPEC : spec.toString();
+	}
+
+	private static class CaffeineStorageAccess implements DomainDataStorageAccess {
+
+		private final Cache<Object, Object> cache;
+
+		CaffeineStorageAccess(Cache<Object, Object> cache) {
+			this.cache = cache;
+		}
+
+		@Override
+		public Object getFromCache(Object key, SharedSessionContractImplementor session) {
+			return cache.getIfPresent(key);
+		}
+
+		@Override
+		public void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+			cache.put(key, value);
+		}
+
+		@Override
+		public void removeFromCache(Object key, SharedSessionContractImplementor session) {
+			cache.invalidate(key);
+		}
+
+		@Override
+		public void clearCache(SharedSessionContractImplementor session) {
+			cache.invalidateAll();
+		}
+
+		@Override
+		public boolean contains(Object key) {
+			return cache.asMap().containsKey(key);
+		}
+
+		@Override
+		public void evictData() {
+			cache.invalidateAll();
+		}
+
+		@Override
+		public void evictData(Object key) {
+			cache.invalidate(key);
+		}
+
+		@Override
+		public void release() {
+			cache.invalidateAll();
+		}
+
+	}
+
+}
@@ -0,0 +1,42 @@
+package br.com.gsr.libraryapi.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * Tuning of the asynchronous mail dispatcher, bound from {@code application.mail.dispatch.*}.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "application.mail.dispatch")
+public class MailDispatchProperties {
+
+	/** Messages waiting to be sent; further messages are rejected when it is full. */
+	private int queueCapacity = 10_000;
+
+	/** Threads sending mail, each with its own SMTP connection per batch. */
+	private int workers = 2;
+
+	/** Messages sent over one SMTP connection. */
+	private int batchSize = 50;
+
+	/** Messages per second allowed towards the SMTP server, on average. */
+	private double ratePerSecond = 10;
+
+	/** Messages the rate limit lets through at once after being idle. */
+	private int burst = 50;
+
+	/** Attempts per message, including the first one. */
+	private int maxAttempts = 3;
+
+	/** Wait before the first retry, doubled on every following one. */
+	private Duration initialBackoff = Duration.ofSeconds(1);
+
+	/** How long shutdown waits for queued messages to be sent. */
+	private Duration shutdownTimeout = Duration.ofSeconds(10);
+
+}
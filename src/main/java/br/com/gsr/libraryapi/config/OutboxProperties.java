@@ -0,0 +1,33 @@
+package br.com.gsr.libraryapi.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * Tuning of the outbox drainers, bound from {@code application.outbox.*}.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "application.outbox")
+public class OutboxProperties {
+
+	/** Threads claiming and sending outbox rows on this node; 0 leaves the outbox to other nodes. */
+	private int drainers = 2;
+
+	/** Rows claimed at once by a drainer. */
+	private int batchSize = 100;
+
+	/** How long a claimed row is reserved; it must outlast sending a whole batch. */
+	private Duration lease = Duration.ofMinutes(5);
+
+	/** Wait before looking for rows again when there were none. */
+	private Duration pollInterval = Duration.ofSeconds(1);
+
+	/** Sends tried before a row is left in the table for inspection. */
+	private int maxAttempts = 10;
+
+}
@@ -0,0 +1,113 @@
+package br.com.gsr.libraryapi.config;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import br.com.gsr.libraryapi.exception.StreamsBusyException;
+
+/**
+ * Runs streamed responses (the NDJSON streams and the loan export) on their own executor
+ * instead of Spring Boot's applicationTaskExecutor, whose 8 threads and unbounded queue
+ * left streams waiting behind each other. A stream holds its thread while the client
+ * reads, so the pool is sized like Tomcat's; when it and its queue are full, new streams
+ * fail with {@link StreamsBusyException}. With {@code application.threads.virtual} every
+ * stream gets a virtual thread of its own and there is no limit.
+ *
+ * The executor is not a bean: an Executor bean would make Boot back off from its
+ * applicationTaskExecutor, and {@code @Async} work would land on the streaming pool.
+ * Read from {@code @Value}s rather than the properties classes, as web slice tests load
+ * WebMvcConfigurers without the application's components.
+ */
+@Configuration
+public class StreamingConfig implements WebMvcConfigurer, DisposableBean {
+
+	private final AsyncTaskExecutor executor;
+	private final ThreadPoolTaskExecutor pool;
+
+	public StreamingConfig(@Value("${application.threads.virtual:false}") boolean virtual,
+			@Value("${application.streams.pool-size:200}") int poolSize,
+			@Value("${application.streams.queue-capacity:100}") int queueCapacity) {
+		if (virtual) {
+			this.pool = null;
+			this.executor = new SimpleAsyncTaskExecutor(Threads.virtual("stream-virtual-"));
+			return;
+		}
+		pool = new ThreadPoolTaskExecutor();
+		pool.setCorePoolSize(poolSize);
+		pool.setMaxPoolSize(poolSize);
+		pool.setAllowCoreThreadTimeOut(true);
+		pool.setQueueCapacity(queueCapacity);
+		pool.setThreadFactory(Threads.platform("stream-"));
+		pool.initialize();
+		this.executor = new BusyRejecting(pool);
+	}
+
+	@Override
+	public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+		configurer.setTaskExecutor(executor);
+	}
+
+	@Override
+	public void destroy() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Tells a full streaming pool apart from rejections of any other executor.
+	 */
+	private static final class BusyRejecting implements AsyncTaskExecutor {
+
+		private final AsyncTaskExecutor delegate;
+
+		BusyRejecting(AsyncTaskExecutor delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void execute(Runnable task) {
+			try {
+				delegate.execute(task);
+			} catch (RejectedExecutionException ex) {
+				throw new StreamsBusyException(ex);
+			}
+		}
+
+		@Override
+		@Deprecated
+		public void execute(Runnable task, long startTimeout) {
+			execute(task);
+		}
+
+		@Override
+		public Future<?> submit(Runnable task) {
+			try {
+				return delegate.submit(task);
+			} catch (RejectedExecutionException ex) {
+				throw new StreamsBusyException(ex);
+			}
+		}
+
+		@Override
+		public <T> Future<T> submit(Callable<T> task) {
+			try {
+				return delegate.submit(task);
+			} catch (RejectedExecutionException ex) {
+				throw new StreamsBusyException(ex);
+			}
+		}
+
+	}
+
+}
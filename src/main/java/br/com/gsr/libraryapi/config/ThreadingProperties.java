@@ -0,0 +1,23 @@
+package br.com.gsr.libraryapi.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * Threads the application runs its work on, bound from {@code application.threads.*}.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "application.threads")
+public class ThreadingProperties {
+
+	/**
+	 * Runs requests, scheduled jobs and mail sends on virtual threads instead of pools of
+	 * platform threads, so calls blocked on the database or SMTP do not hold a thread of a
+	 * bounded pool.
+	 */
+	private boolean virtual;
+
+}
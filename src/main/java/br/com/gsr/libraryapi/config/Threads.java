@@ -0,0 +1,37 @@
+package br.com.gsr.libraryapi.config;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factories of named threads.
+ */
+public final class Threads {
+
+	private Threads() {
+	}
+
+	public static ThreadFactory of(ThreadingProperties properties, String prefix) {
+		return properties.isVirtual() ? virtual(prefix) : platform(prefix);
+	}
+
+	/**
+	 * Daemon platform threads, numbered from 1.
+	 */
+	public static ThreadFactory platform(String prefix) {
+		AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * Virtual threads, numbered from 1.
+	 */
+	public static ThreadFactory virtual(String prefix) {
+		return Thread.ofVirtual().name(prefix, 1).factory();
+	}
+
+}
@@ -0,0 +1,51 @@
+package br.com.gsr.libraryapi.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.task.TaskSchedulerCustomizer;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Moves Tomcat requests and {@code @Scheduled} jobs to virtual threads when
+ * {@code application.threads.virtual} is enabled. Mail sends, outbox drainers and
+ * streamed responses follow the same switch in EmailServiceImpl, OutboxDrainer and
+ * StreamingConfig.
+ */
+@Configuration
+@ConditionalOnProperty(name = "application.threads.virtual", havingValue = "true")
+public class VirtualThreadsConfig {
+
+	/**
+	 * Scheduled jobs that may run at the same time; virtual threads cost next to nothing
+	 * while idle, so there is one for each instead of Boot's single scheduling thread.
+	 */
+	static final int SCHEDULING_POOL_SIZE = 16;
+
+	/**
+	 * A new virtual thread per request instead of Tomcat's bounded worker pool; the
+	 * number of requests in flight is then limited by max-connections only.
+	 */
+	@Bean
+	public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadsProtocolHandlerCustomizer() {
+		ExecutorService executor = Executors.newThreadPerTaskExecutor(Threads.virtual("http-virtual-"));
+		return protocolHandler -> protocolHandler.setExecutor(executor);
+	}
+
+	/**
+	 * A long run of the late loans job no longer holds up the index refresh, as both
+	 * used to share the one scheduling thread.
+	 */
+	@Bean
+	public TaskSchedulerCustomizer virtualThreadsTaskSchedulerCustomizer() {
+		return scheduler -> {
+			scheduler.setPoolSize(SCHEDULING_POOL_SIZE);
+			scheduler.setThreadFactory(Threads.virtual("scheduling-virtual-"));
+		};
+	}
+
+}
@@ -0,0 +1,14 @@
+package br.com.gsr.libraryapi.exception;
+
+/**
+ * A streamed response found every streaming thread busy and their queue full.
+ */
+public class StreamsBusyException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public StreamsBusyException(Throwable cause) {
+		super("Too many streams in progress, try again.", cause);
+	}
+
+}
@@ -0,0 +1,122 @@
+package br.com.gsr.libraryapi.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.api.model.repository.BookRepository;
+import br.com.gsr.libraryapi.api.model.repository.BookTombstoneRepository;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Keeps the node-local search and suggest indexes in line with the books table, which
+ * other nodes write too. Each node indexes its own writes right after commit; this
+ * catches up with everyone else's by reindexing the books changed, and dropping the
+ * tombstones left, since the previous refresh. Nothing is read while the write count of
+ * the books table stays the same.
+ *
+ * Changes are stamped by the writer's clock when flushed, and show up once committed,
+ * so each refresh looks back {@code application.books.index-refresh-overlap} past the
+ * previous one; it must exceed the longest book transaction plus the clock skew between
+ * nodes. Books in the overlap are indexed again, which is harmless.
+ *
+ * The first refresh, when the application is ready, indexes every book. Writes of other
+ * nodes show up within {@code application.books.index-refresh-delay} milliseconds.
+ */
+@Service
+@RequiredArgsConstructor
+public class BookIndexRefreshService {
+
+	@Value("${application.books.index-refresh-batch-size:1000}")
+	int batchSize;
+
+	@Value("${application.books.index-refresh-overlap:1m}")
+	Duration overlap;
+
+	@Value("${application.books.tombstone-retention:1d}")
+	Duration tombstoneRetention;
+
+	private final BookRepository repository;
+	private final BookTombstoneRepository tombstoneRepository;
+	private final TableChangeService tableChangeService;
+	private final BookSearchService searchService;
+	private final BookSuggestService suggestService;
+
+	private Instant refreshedAt;
+	private long indexedChanges = -1;
+
+	@EventListener(ApplicationReadyEvent.class)
+	@Scheduled(fixedDelayString = "${application.books.index-refresh-delay:30000}",
+			initialDelayString = "${application.books.index-refresh-delay:30000}")
+	public synchronized void refresh() {
+		// both read before the scan, so a write landing during it is caught by the next refresh
+		Instant now = Instant.now();
+		long changes = tableChangeService.changes(TableChangeService.BOOKS);
+		if (changes != indexedChanges) {
+			if (refreshedAt == null) {
+				indexAll();
+			} else {
+				indexChangedSince(refreshedAt.minus(overlap));
+			}
+			tombstoneRepository.deleteDeletedBefore(now.minus(tombstoneRetention));
+			indexedChanges = changes;
+		}
+		refreshedAt = now;
+	}
+
+	private void indexAll() {
+		long afterId = 0;
+		List<Book> batch;
+		do {
+			batch = repository.findAllAfter(afterId, page());
+			afterId = index(batch);
+		} while (batch.size() == batchSize);
+	}
+
+	private void indexChangedSince(Instant since) {
+		long afterId = 0;
+		List<Book> batch;
+		do {
+			batch = repository.findChangedAfter(since, afterId, page());
+			afterId = index(batch);
+		} while (batch.size() == batchSize);
+
+		afterId = 0;
+		List<Long> deleted;
+		do {
+			deleted = tombstoneRepository.findDeletedAfter(since, afterId, page());
+			for (Long id : deleted) {
+				searchService.remove(id);
+				suggestService.remove(id);
+				afterId = id;
+			}
+		} while (deleted.size() == batchSize);
+	}
+
+	/**
+	 * Returns the id of the last book, to read the next batch after it.
+	 */
+	private long index(List<Book> batch) {
+		long lastId = 0;
+		for (Book book : batch) {
+			searchService.index(book);
+			suggestService.index(book);
+			lastId = book.getId();
+		}
+		return lastId;
+	}
+
+	private Pageable page() {
+		return PageRequest.of(0, batchSize);
+	}
+
+}
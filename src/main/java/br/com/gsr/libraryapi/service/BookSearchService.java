@@ -0,0 +1,15 @@
+package br.com.gsr.libraryapi.service;
+
+import java.util.List;
+
+import br.com.gsr.libraryapi.api.model.entity.Book;
+
+public interface BookSearchService {
+
+	void index(Book book);
+
+	void remove(Long bookId);
+
+	List<Book> search(String query, int limit);
+
+}
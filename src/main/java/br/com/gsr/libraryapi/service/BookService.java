@@ -1,24 +1,63 @@
 package br.com.gsr.libraryapi.service;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import br.com.gsr.libraryapi.api.dto.BookDTO;
 import br.com.gsr.libraryapi.api.model.entity.Book;
 
 public interface BookService {
 
 	Book save(Book book);
 
+	/**
+	 * Inserts, in one transaction, the books whose isbn is not registered yet. Books with
+	 * a registered isbn are skipped and keep a null id.
+	 */
+	List<Book> saveAll(List<Book> books);
+
 	Optional<Book> getById(Long id);
 
-	void delete(Book book);
+	/**
+	 * Version of the book, read without loading it.
+	 */
+	Optional<Long> getVersion(Long id);
+
+	/**
+	 * False when there is no book with the id; a book with loans is not deleted. Only the
+	 * book's own cache entries are evicted.
+	 */
+	boolean deleteById(Long id);
+
+	/**
+	 * Updates title and author of the book read from the database, without merging a
+	 * detached copy. Empty when there is no book with the id.
+	 */
+	Optional<Book> updateTitleAndAuthor(Long id, String title, String author);
 
-	Book update(Book book);
+	/**
+	 * Books whose title, author and isbn start with the ones of the filter, ignoring case
+	 * and null properties; a non-null id must match. Read straight into DTOs, without
+	 * managed entities.
+	 */
+	Page<BookDTO> findDTO(Book filter, Pageable pageRequest);
 
-	Page<Book> find(Book filter, Pageable pageRequest);
+	Slice<BookDTO> findDTOSlice(Book filter, Pageable pageRequest);
+
+	List<Book> findAfter(Book filter, Long afterId, int limit);
+
+	/**
+	 * Writes to books so far; any book listing may have changed when it grows.
+	 */
+	long getChangeCount();
 
 	Optional<Book> getBookByIsbn(String isbn);
 
+	List<Book> getBooksByIsbn(Collection<String> isbns);
+
 }
@@ -0,0 +1,19 @@
+package br.com.gsr.libraryapi.service;
+
+import java.util.List;
+
+import br.com.gsr.libraryapi.api.model.entity.Book;
+
+public interface BookSuggestService {
+
+	void index(Book book);
+
+	void remove(Long bookId);
+
+	/**
+	 * Titles and authors with a word starting with {@code prefix}, the most common first.
+	 * Implementations may return fewer than {@code limit} completions.
+	 */
+	List<String> suggest(String prefix, int limit);
+
+}
@@ -1,9 +1,22 @@
 package br.com.gsr.libraryapi.service;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface EmailService {
 
-	void sendMails(String mensagem, List<String> emailsList);
+	/**
+	 * Queues one message per recipient and returns without waiting for the SMTP server.
+	 * The future completes when every message was sent, or exceptionally when any of
+	 * them was rejected by a full queue or failed all of its attempts.
+	 */
+	CompletableFuture<Void> sendMails(String subject, String mensagem, List<String> emailsList);
+
+	/**
+	 * Queues a single message, like {@link #sendMails(String, String, List)} for one recipient,
+	 * but tries it only once: a failure completes the future right away, and retrying is
+	 * left to the caller.
+	 */
+	CompletableFuture<Void> sendMail(String subject, String mensagem, String email);
 
 }
@@ -0,0 +1,19 @@
+package br.com.gsr.libraryapi.service;
+
+import java.time.Duration;
+
+public interface JobLockService {
+
+	/**
+	 * Takes or renews the lease on {@code name} for this node.
+	 *
+	 * @return false when another node holds an unexpired lease
+	 */
+	boolean tryLock(String name, Duration lease);
+
+	/**
+	 * Ends this node's lease on {@code name}, if it still holds it.
+	 */
+	void unlock(String name);
+
+}
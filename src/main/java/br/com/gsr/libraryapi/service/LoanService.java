@@ -1,27 +1,74 @@
 package br.com.gsr.libraryapi.service;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import br.com.gsr.libraryapi.api.dto.LoanDTO;
 import br.com.gsr.libraryapi.api.dto.LoanFilterDTO;
-import br.com.gsr.libraryapi.api.model.entity.Book;
 import br.com.gsr.libraryapi.api.model.entity.Loan;
+import br.com.gsr.libraryapi.api.model.repository.LateLoan;
 
 public interface LoanService {
 
 	Loan save(Loan loan);
 
+	/**
+	 * Inserts, in one transaction, the loans whose book has no open loan. The others
+	 * are skipped and keep a null id.
+	 */
+	List<Loan> saveAll(List<Loan> loans);
+
 	Optional<Loan> getById(Long id);
 
-	Loan update(Loan loan);
+	/**
+	 * Sets the returned flag of the loans in one transaction and returns the loans found.
+	 */
+	List<Loan> updateReturned(Map<Long, Boolean> returnedById);
+
+	/**
+	 * Sets the returned flag of a loan in one statement, without loading it. False when
+	 * there is no loan with the id.
+	 */
+	boolean updateReturned(Long id, Boolean returned);
+
+	List<Loan> findAfter(LoanFilterDTO filterDTO, Long afterId, int limit);
+
+	/**
+	 * Loans matching every property present in the filter, read straight into DTOs,
+	 * without managed entities.
+	 */
+	Page<LoanDTO> findDTO(LoanFilterDTO filterDTO, Pageable pageable);
+
+	Slice<LoanDTO> findDTOSlice(LoanFilterDTO filterDTO, Pageable pageable);
+
+	/**
+	 * Writes to loans and books so far, as loan listings carry their book; any loan
+	 * listing may have changed when it grows.
+	 */
+	long getChangeCount();
+
+	Page<LoanDTO> getLoanDTOsByBook(Long bookId, Pageable pageable);
 
-	Page<Loan> find(LoanFilterDTO filterDTO, Pageable pageable);
+	Slice<LoanDTO> getLoanDTOSliceByBook(Long bookId, Pageable pageable);
 
-	Page<Loan> getLoansByBook(Book book, Pageable pageable);
+	/**
+	 * Up to {@code limit} loans, in id order after {@code afterId}, that were still open
+	 * more than the loan period before {@code date}. Only ids in {@code shard}, out of
+	 * {@code shards} partitions by id, are returned.
+	 */
+	List<LateLoan> getLateLoansAfter(LocalDate date, int shards, int shard, Long afterId, int limit);
 
-	List<Loan> getAllLateLoans();
+	/**
+	 * Hands every loan to {@code consumer} in id order without holding them in memory.
+	 * Loans are detached shortly after being consumed and must not be kept.
+	 */
+	void exportLoans(Consumer<Loan> consumer);
 	
 }
@@ -0,0 +1,118 @@
+package br.com.gsr.libraryapi.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import br.com.gsr.libraryapi.api.model.entity.OutboxMessage;
+import br.com.gsr.libraryapi.config.OutboxProperties;
+import br.com.gsr.libraryapi.config.ThreadingProperties;
+import br.com.gsr.libraryapi.config.Threads;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Threads moving outbox rows to the {@link EmailService}. Each one claims a batch,
+ * waits for it to be sent, deletes what was sent and releases what failed. Any
+ * number of threads and nodes can drain the same table; a message is sent at least
+ * once, and again if its drainer dies before deleting it.
+ *
+ * The outbox is the only retry layer: each claim tries a message once, and a failed
+ * message is claimed again once its lease expires, up to {@code application.outbox.max-attempts}.
+ */
+@Slf4j
+@Component
+public class OutboxDrainer {
+
+	private final OutboxService outboxService;
+	private final EmailService emailService;
+	private final OutboxProperties properties;
+	private final ExecutorService drainers;
+	private volatile boolean stopped;
+
+	public OutboxDrainer(OutboxService outboxService, EmailService emailService, OutboxProperties properties,
+			ThreadingProperties threading) {
+		this.outboxService = outboxService;
+		this.emailService = emailService;
+		this.properties = properties;
+		// a node with no drainers only writes to the outbox
+		this.drainers = Executors.newFixedThreadPool(Math.max(1, properties.getDrainers()),
+				Threads.of(threading, "outbox-drainer-"));
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		for (int i = 0; i < properties.getDrainers(); i++) {
+			drainers.execute(this::drain);
+		}
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		stopped = true;
+		drainers.shutdown();
+		if (!drainers.awaitTermination(properties.getPollInterval().toMillis() * 2, TimeUnit.MILLISECONDS)) {
+			drainers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Claims, sends and settles one batch.
+	 *
+	 * @return how many messages were claimed
+	 */
+	public int drainOnce() {
+		String owner = UUID.randomUUID().toString();
+		List<OutboxMessage> claimed = outboxService.claim(owner, properties.getBatchSize());
+		if (claimed.isEmpty()) {
+			return 0;
+		}
+		Map<Long, CompletableFuture<Void>> sends = new LinkedHashMap<>();
+		for (OutboxMessage message : claimed) {
+			sends.put(message.getId(), emailService.sendMail(message.getSubject(), message.getMessage(), message.getRecipient()));
+		}
+		CompletableFuture.allOf(sends.values().toArray(new CompletableFuture<?>[0]))
+			.handle((result, failure) -> null)
+			.join();
+
+		List<Long> sent = new ArrayList<>();
+		List<Long> failed = new ArrayList<>();
+		sends.forEach((id, send) -> (send.isCompletedExceptionally() ? failed : sent).add(id));
+		outboxService.acknowledge(owner, sent);
+		outboxService.release(owner, failed);
+		return claimed.size();
+	}
+
+	private void drain() {
+		while (!stopped) {
+			try {
+				if (drainOnce() == 0) {
+					TimeUnit.MILLISECONDS.sleep(properties.getPollInterval().toMillis());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (RuntimeException e) {
+				log.error("Could not drain the outbox", e);
+				try {
+					TimeUnit.MILLISECONDS.sleep(properties.getPollInterval().toMillis());
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+}
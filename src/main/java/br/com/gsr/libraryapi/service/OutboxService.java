@@ -0,0 +1,29 @@
+package br.com.gsr.libraryapi.service;
+
+import java.util.Collection;
+import java.util.List;
+
+import br.com.gsr.libraryapi.api.model.entity.OutboxMessage;
+
+public interface OutboxService {
+
+	/**
+	 * Stores one message per recipient. Must be called inside the transaction of the
+	 * change that causes the mail, so both are committed or neither is.
+	 */
+	void enqueue(String subject, String message, Collection<String> recipients);
+
+	/**
+	 * Leases up to {@code limit} messages to {@code owner}, skipping those leased by
+	 * other drainers.
+	 */
+	List<OutboxMessage> claim(String owner, int limit);
+
+	/**
+	 * Deletes sent messages, as long as they are still leased to {@code owner}.
+	 */
+	void acknowledge(String owner, Collection<Long> ids);
+
+	void release(String owner, Collection<Long> ids);
+
+}
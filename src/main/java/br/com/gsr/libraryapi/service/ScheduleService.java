@@ -1,36 +1,152 @@
 package br.com.gsr.libraryapi.service;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import br.com.gsr.libraryapi.api.model.entity.Loan;
+import br.com.gsr.libraryapi.api.model.entity.JobCheckpoint;
+import br.com.gsr.libraryapi.api.model.repository.JobCheckpointRepository;
+import br.com.gsr.libraryapi.api.model.repository.LateLoan;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class ScheduleService {
 
 	private static final String CRON_LATE_LOANS = "0 0 0 1/1 * ?";
-	
+	public static final String LATE_LOANS_JOB = "late-loans-mail";
+	public static final String LATE_LOANS_SUBJECT = "Livro com empréstimo atrasado";
+
 	@Value("${application.mail.lateloans.message}")
 	String mensagem;
-	
+
+	@Value("${application.lateloans.chunk-size:500}")
+	int chunkSize;
+
+	@Value("${application.lateloans.shards:1}")
+	int shards;
+
+	@Value("${application.lateloans.lock-lease:10m}")
+	Duration lockLease;
+
 	private final LoanService loanService;
-	private final EmailService emailService;
-	
+	private final OutboxService outboxService;
+	private final JobCheckpointRepository checkpointRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final JobLockService jobLockService;
+
+	/**
+	 * Mails late customers, split into {@code shards} partitions of loan ids. Every node
+	 * fires the job, and each shard is run by the node that takes its lock, so nodes
+	 * share the work instead of repeating it. Shards already completed today are skipped.
+	 */
 	@Scheduled(cron = CRON_LATE_LOANS)
 	public void sendMailToLateLoans() {
-		List<Loan> allLateLoans = loanService.getAllLateLoans();
-		List<String> emailsList = allLateLoans.stream()
-			.map( loan -> loan.getCustomerEmail())
+		// nodes start on different shards instead of all queueing for the first one
+		int first = ThreadLocalRandom.current().nextInt(shards);
+		for (int i = 0; i < shards; i++) {
+			runShard((first + i) % shards);
+		}
+	}
+
+	/**
+	 * Finishes a run of today that stopped halfway, instead of waiting for tomorrow's.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void resumeLateLoansMail() {
+		LocalDate today = LocalDate.now();
+		boolean interrupted = IntStream.range(0, shards)
+				.mapToObj(shard -> checkpointRepository.findById(jobName(shard)))
+				.anyMatch(checkpoint -> checkpoint
+						.filter(previous -> today.equals(previous.getRunDate()) && !previous.isCompleted())
+						.isPresent());
+		if (interrupted) {
+			sendMailToLateLoans();
+		}
+	}
+
+	/**
+	 * Mails a shard a chunk at a time while holding its lock. Each chunk's mails go to the
+	 * outbox in the same transaction that saves the last loan id of the chunk, so a run
+	 * interrupted halfway resumes after that id, with the same late date, without
+	 * queueing anyone twice or skipping anyone.
+	 *
+	 * The lock is renewed at the start of every chunk's transaction, so a slow chunk
+	 * cannot outlive it: a node that lost the lock rolls the chunk back and leaves the
+	 * rest to the node that took over. The checkpoint version fences the write as well,
+	 * in case the other node already saved progress.
+	 */
+	private void runShard(int shard) {
+		String name = jobName(shard);
+		LocalDate today = LocalDate.now();
+		JobCheckpoint checkpoint = checkpointRepository.findById(name)
+				.filter(previous -> today.equals(previous.getRunDate()))
+				.orElseGet(() -> JobCheckpoint.builder().name(name).runDate(today).lastId(0L).build());
+		if (checkpoint.isCompleted() || !jobLockService.tryLock(name, lockLease)) {
+			return;
+		}
+		try {
+			// read again under the lock, another node may have progressed meanwhile
+			checkpoint = checkpointRepository.findById(name)
+					.filter(previous -> today.equals(previous.getRunDate()))
+					.orElse(checkpoint);
+			while (checkpoint != null && !checkpoint.isCompleted()) {
+				JobCheckpoint current = checkpoint;
+				checkpoint = transactionTemplate.execute(status -> processChunk(current, shard, status));
+			}
+		} catch (OptimisticLockingFailureException ex) {
+			log.warn("Job {} progressed on another node, leaving it there", name);
+		} finally {
+			jobLockService.unlock(name);
+		}
+	}
+
+	/**
+	 * @return the saved checkpoint, or null when the lock was lost and nothing was written
+	 */
+	private JobCheckpoint processChunk(JobCheckpoint checkpoint, int shard, TransactionStatus status) {
+		if (!jobLockService.tryLock(checkpoint.getName(), lockLease)) {
+			status.setRollbackOnly();
+			return null;
+		}
+		List<LateLoan> chunk = loanService.getLateLoansAfter(checkpoint.getRunDate(), shards, shard,
+				checkpoint.getLastId(), chunkSize);
+		List<String> emailsList = chunk.stream()
+			.map(LateLoan::getCustomerEmail)
+			.filter(Objects::nonNull)
 			.collect(Collectors.toList());
-	
-		emailService.sendMails(mensagem, emailsList);
-	
+
+		if (!emailsList.isEmpty()) {
+			outboxService.enqueue(LATE_LOANS_SUBJECT, mensagem, emailsList);
+		}
+		if (!chunk.isEmpty()) {
+			checkpoint.setLastId(chunk.get(chunk.size() - 1).getId());
+		}
+		checkpoint.setCompleted(chunk.size() < chunkSize);
+		return checkpointRepository.save(checkpoint);
+	}
+
+	/**
+	 * The shard count is part of the name, so checkpoints of a run split differently
+	 * are not mistaken for this one's.
+	 */
+	private String jobName(int shard) {
+		return shards == 1 ? LATE_LOANS_JOB : LATE_LOANS_JOB + "-" + shard + "-of-" + shards;
 	}
-	
+
 }
@@ -0,0 +1,23 @@
+package br.com.gsr.libraryapi.service;
+
+/**
+ * Counts the writes to the book and loan tables, for the ETags of their listings: reading
+ * a count is a few primary-key lookups, whatever the size of the table or the filter.
+ */
+public interface TableChangeService {
+
+	String BOOKS = "book";
+	String LOANS = "loan";
+
+	/**
+	 * Must run in the transaction of the write, so a reader that sees the new count also
+	 * sees the new rows.
+	 */
+	void changed(String table);
+
+	/**
+	 * Writes committed to the tables so far, summed; only ever increases.
+	 */
+	long changes(String... tables);
+
+}
@@ -0,0 +1,178 @@
+package br.com.gsr.libraryapi.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.springframework.stereotype.Service;
+
+import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.service.BookIndexRefreshService;
+import br.com.gsr.libraryapi.service.BookSearchService;
+
+/**
+ * In-memory inverted index over title, author and isbn.
+ *
+ * Writers are serialized, readers never block: each term maps to the books that
+ * contain it and the weight of the term in that book. The last query term also
+ * matches as a prefix so partially typed words still find results.
+ *
+ * The index lives in the memory of each application instance, which indexes its own
+ * writes; {@link BookIndexRefreshService} brings in the ones of the other instances.
+ */
+@Service
+public class BookSearchServiceImpl implements BookSearchService {
+
+	private static final float TITLE_WEIGHT = 3f;
+	private static final float AUTHOR_WEIGHT = 2f;
+	private static final float ISBN_WEIGHT = 5f;
+	private static final int MIN_PREFIX_LENGTH = 2;
+	private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+	private final Map<Long, Book> documents = new ConcurrentHashMap<>();
+	private final ConcurrentNavigableMap<String, Map<Long, Float>> postings = new ConcurrentSkipListMap<>();
+
+	@Override
+	public synchronized void index(Book book) {
+		if (book == null || book.getId() == null) {
+			throw new IllegalArgumentException("Book id cant be null.");
+		}
+		unindex(book.getId());
+		Book document = Book.builder()
+				.id(book.getId())
+				.title(book.getTitle())
+				.author(book.getAuthor())
+				.isbn(book.getIsbn())
+				.build();
+		termWeights(document).forEach((term, weight) ->
+				postings.computeIfAbsent(term, t -> new ConcurrentHashMap<>()).put(document.getId(), weight));
+		documents.put(document.getId(), document);
+	}
+
+	@Override
+	public synchronized void remove(Long bookId) {
+		if (bookId != null) {
+			unindex(bookId);
+		}
+	}
+
+	@Override
+	public List<Book> search(String query, int limit) {
+		List<String> terms = queryTerms(query);
+		if (terms.isEmpty() || limit < 1) {
+			return Collections.emptyList();
+		}
+
+		int documentCount = Math.max(1, documents.size());
+		Map<Long, Float> scores = new HashMap<>();
+		Map<Long, Integer> matches = new HashMap<>();
+		for (int i = 0; i < terms.size(); i++) {
+			String term = terms.get(i);
+			boolean prefix = i == terms.size() - 1 && term.length() >= MIN_PREFIX_LENGTH;
+			Map<Long, Float> termScores = termScores(term, prefix, documentCount);
+			termScores.forEach((id, score) -> {
+				scores.merge(id, score, Float::sum);
+				matches.merge(id, 1, Integer::sum);
+			});
+		}
+
+		// books matching more of the query terms rank above books matching only a few
+		Comparator<Map.Entry<Long, Float>> byRelevance = Map.Entry.<Long, Float>comparingByValue()
+				.thenComparing(Map.Entry.<Long, Float>comparingByKey().reversed());
+		PriorityQueue<Map.Entry<Long, Float>> top = new PriorityQueue<>(limit + 1, byRelevance);
+		scores.forEach((id, score) -> {
+			top.add(Map.entry(id, score * matches.get(id) / terms.size()));
+			if (top.size() > limit) {
+				top.poll();
+			}
+		});
+
+		List<Book> result = new ArrayList<>(top.size());
+		while (!top.isEmpty()) {
+			Book document = documents.get(top.poll().getKey());
+			if (document != null) {
+				result.add(copyOf(document));
+			}
+		}
+		Collections.reverse(result);
+		return result;
+	}
+
+	private Map<Long, Float> termScores(String term, boolean prefix, int documentCount) {
+		Map<Long, Float> termScores = new HashMap<>();
+		Map<String, Map<Long, Float>> matching = prefix
+				? postings.subMap(term, true, term + Character.MAX_VALUE, true)
+				: exact(term);
+		int expansions = 0;
+		for (Map<Long, Float> docs : matching.values()) {
+			if (expansions++ == MAX_PREFIX_EXPANSIONS) {
+				break;
+			}
+			float idf = idf(docs.size(), documentCount);
+			docs.forEach((id, weight) -> termScores.merge(id, idf * weight, Math::max));
+		}
+		return termScores;
+	}
+
+	private Map<String, Map<Long, Float>> exact(String term) {
+		Map<Long, Float> docs = postings.get(term);
+		return docs == null ? Collections.emptyMap() : Collections.singletonMap(term, docs);
+	}
+
+	private static float idf(int documentFrequency, int documentCount) {
+		return (float) Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+	}
+
+	private void unindex(Long bookId) {
+		Book previous = documents.remove(bookId);
+		if (previous == null) {
+			return;
+		}
+		for (String term : termWeights(previous).keySet()) {
+			postings.computeIfPresent(term, (t, docs) -> {
+				docs.remove(bookId);
+				return docs.isEmpty() ? null : docs;
+			});
+		}
+	}
+
+	private static Map<String, Float> termWeights(Book book) {
+		Map<String, Float> weights = new HashMap<>();
+		TextNormalizer.tokens(book.getTitle()).forEach(term -> weights.merge(term, TITLE_WEIGHT, Float::sum));
+		TextNormalizer.tokens(book.getAuthor()).forEach(term -> weights.merge(term, AUTHOR_WEIGHT, Float::sum));
+		String isbn = TextNormalizer.isbnToken(book.getIsbn());
+		if (!isbn.isEmpty()) {
+			weights.merge(isbn, ISBN_WEIGHT, Float::sum);
+		}
+		return weights;
+	}
+
+	/**
+	 * A query that only looks like an isbn ("978-85-359-0277-5") is searched as one
+	 * token, the way isbns are indexed.
+	 */
+	private static List<String> queryTerms(String query) {
+		String isbn = TextNormalizer.isbnToken(query);
+		if (isbn.matches("[0-9]+x?")) {
+			return Collections.singletonList(isbn);
+		}
+		return TextNormalizer.tokens(query);
+	}
+
+	private static Book copyOf(Book document) {
+		return Book.builder()
+				.id(document.getId())
+				.title(document.getTitle())
+				.author(document.getAuthor())
+				.isbn(document.getIsbn())
+				.build();
+	}
+
+}
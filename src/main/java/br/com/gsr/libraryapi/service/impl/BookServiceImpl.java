@@ -1,35 +1,97 @@
 package br.com.gsr.libraryapi.service.impl;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
-import org.springframework.data.domain.Example;
-import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.ExampleMatcher.StringMatcher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import br.com.gsr.libraryapi.api.dto.BookDTO;
 import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.api.model.entity.Loan;
 import br.com.gsr.libraryapi.api.model.repository.BookRepository;
+import br.com.gsr.libraryapi.api.model.repository.BookTombstoneRepository;
 import br.com.gsr.libraryapi.exception.BusinessException;
+import br.com.gsr.libraryapi.service.BookSearchService;
 import br.com.gsr.libraryapi.service.BookService;
+import br.com.gsr.libraryapi.service.BookSuggestService;
+import br.com.gsr.libraryapi.service.TableChangeService;
 
 @Service
 public class BookServiceImpl implements BookService {
 
 	private BookRepository repository;
+	private BookTombstoneRepository tombstoneRepository;
+	private BookSearchService searchService;
+	private BookSuggestService suggestService;
+	private TableChangeService tableChangeService;
 	
-	public BookServiceImpl(BookRepository repository) {
+	public BookServiceImpl(BookRepository repository, BookTombstoneRepository tombstoneRepository,
+			BookSearchService searchService, BookSuggestService suggestService, TableChangeService tableChangeService) {
 		this.repository = repository;
+		this.tombstoneRepository = tombstoneRepository;
+		this.searchService = searchService;
+		this.suggestService = suggestService;
+		this.tableChangeService = tableChangeService;
 	}
 
 	@Override
+	@Transactional
 	public Book save(Book book) {
-		
-		if (this.repository.existsByIsbn(book.getIsbn())) {
-			throw new BusinessException("Isbn já cadastrado.");
+		Book saved;
+		try {
+			saved = repository.saveAndFlush(book);
+		} catch (DataIntegrityViolationException ex) {
+			if (ConstraintViolations.isViolationOf(ex, Book.UK_ISBN)) {
+				throw new BusinessException("Isbn já cadastrado.");
+			}
+			throw ex;
 		}
-		return repository.save(book);
+		tableChangeService.changed(TableChangeService.BOOKS);
+		Book indexed = saved;
+		afterCommit(() -> {
+			searchService.index(indexed);
+			suggestService.index(indexed);
+		});
+		return saved;
+	}
+
+	@Override
+	@Transactional
+	public List<Book> saveAll(List<Book> books) {
+		Set<String> isbns = books.stream().map(Book::getIsbn).collect(Collectors.toSet());
+		Set<String> registered = isbns.isEmpty() ? Collections.emptySet() : repository.findExistingIsbns(isbns);
+		List<Book> newBooks = books.stream()
+				.filter(book -> !registered.contains(book.getIsbn()))
+				.collect(Collectors.toList());
+		try {
+			repository.saveAll(newBooks);
+			repository.flush();
+		} catch (DataIntegrityViolationException ex) {
+			if (ConstraintViolations.isViolationOf(ex, Book.UK_ISBN)) {
+				throw new BusinessException("Isbn já cadastrado.");
+			}
+			throw ex;
+		}
+		if (!newBooks.isEmpty()) {
+			tableChangeService.changed(TableChangeService.BOOKS);
+		}
+		afterCommit(() -> newBooks.forEach(book -> {
+			searchService.index(book);
+			suggestService.index(book);
+		}));
+		return newBooks;
 	}
 
 	@Override
@@ -38,37 +100,101 @@ public class BookServiceImpl implements BookService {
 	}
 
 	@Override
-	public void delete(Book book) {
-		if (book == null || book.getId() == null) {
-			throw new IllegalArgumentException("Book id cant be null.");
+	public Optional<Long> getVersion(Long id) {
+		return repository.findVersionById(id);
+	}
+
+	@Override
+	@Transactional
+	public boolean deleteById(Long id) {
+		Optional<Book> book = repository.findForWrite(id);
+		if (!book.isPresent()) {
+			return false;
+		}
+		try {
+			repository.delete(book.get());
+			repository.flush();
+		} catch (DataIntegrityViolationException ex) {
+			if (ConstraintViolations.isViolationOf(ex, Loan.FK_BOOK)) {
+				throw new BusinessException("Livro possui empréstimos.");
+			}
+			throw ex;
 		}
-		this.repository.delete(book);
-		
+		tombstoneRepository.insert(id, Instant.now());
+		tableChangeService.changed(TableChangeService.BOOKS);
+		afterCommit(() -> {
+			searchService.remove(id);
+			suggestService.remove(id);
+		});
+		return true;
 	}
 
 	@Override
-	public Book update(Book book) {
-		if (book == null || book.getId() == null) {
-			throw new IllegalArgumentException("Book id cant be null.");
+	@Transactional
+	public Optional<Book> updateTitleAndAuthor(Long id, String title, String author) {
+		Optional<Book> updated = repository.findForWrite(id);
+		if (!updated.isPresent()) {
+			return Optional.empty();
 		}
-		return this.repository.save(book);
+		Book book = updated.get();
+		book.setTitle(title);
+		book.setAuthor(author);
+		repository.flush();
+		tableChangeService.changed(TableChangeService.BOOKS);
+		afterCommit(() -> {
+			searchService.index(book);
+			suggestService.index(book);
+		});
+		return updated;
+	}
+
+	@Override
+	public Page<BookDTO> findDTO(Book filter, Pageable pageRequest) {
+		return repository.findDTOByFilter(filter, pageRequest);
 	}
 
 	@Override
-	public Page<Book> find(Book filter, Pageable pageRequest) {
-		Example<Book> example = Example.of(filter, 
-				ExampleMatcher
-					.matching()
-					.withIgnoreCase()
-					.withIgnoreNullValues()
-					.withStringMatcher( StringMatcher.STARTING )
-		);
-		return repository.findAll(example, pageRequest);
+	public Slice<BookDTO> findDTOSlice(Book filter, Pageable pageRequest) {
+		return repository.findDTOSliceByFilter(filter, pageRequest);
+	}
+
+	@Override
+	public List<Book> findAfter(Book filter, Long afterId, int limit) {
+		return repository.findByFilterAfter(filter, afterId, limit);
+	}
+
+	@Override
+	public long getChangeCount() {
+		return tableChangeService.changes(TableChangeService.BOOKS);
 	}
 
 	@Override
 	public Optional<Book> getBookByIsbn(String isbn) {
-		return repository.findByIsbn(isbn);
+		return repository.findByNaturalId(isbn);
+	}
+
+	@Override
+	public List<Book> getBooksByIsbn(Collection<String> isbns) {
+		if (isbns.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return repository.findByIsbnIn(isbns);
+	}
+
+	/**
+	 * The in-memory indexes must not see books of a transaction that rolls back.
+	 */
+	private static void afterCommit(Runnable action) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			action.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				action.run();
+			}
+		});
 	}
 
 }
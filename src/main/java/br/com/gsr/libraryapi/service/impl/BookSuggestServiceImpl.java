@@ -0,0 +1,314 @@
+package br.com.gsr.libraryapi.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.stereotype.Service;
+
+import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.service.BookIndexRefreshService;
+import br.com.gsr.libraryapi.service.BookSuggestService;
+
+/**
+ * Type-ahead over book titles and authors.
+ *
+ * Every title and author is inserted in a trie once per word it contains, so "casm"
+ * completes "Dom Casmurro". Each node keeps its best {@link #MAX_SUGGESTIONS}
+ * completions, ranked by how many books share the text, so a lookup is a walk down
+ * the prefix and never returns more than that. Nodes stop at {@link #MAX_DEPTH}
+ * characters; longer prefixes are answered by filtering the completions stored there.
+ *
+ * Like the search index, the trie is local to each application instance and kept in
+ * line with the other instances by {@link BookIndexRefreshService}.
+ */
+@Service
+public class BookSuggestServiceImpl implements BookSuggestService {
+
+	private static final int MAX_SUGGESTIONS = 10;
+	private static final int MAX_DEPTH = 16;
+
+	private static final Comparator<Suggestion> RANKING = Comparator.<Suggestion>comparingInt(s -> -s.books)
+			.thenComparing(s -> s.key);
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Node root = new Node();
+	private final Map<String, Suggestion> suggestions = new HashMap<>();
+	private final Map<Long, List<String>> keysByBook = new HashMap<>();
+
+	@Override
+	public void index(Book book) {
+		if (book == null || book.getId() == null) {
+			throw new IllegalArgumentException("Book id cant be null.");
+		}
+		lock.writeLock().lock();
+		try {
+			unindex(book.getId());
+			List<String> keys = new ArrayList<>(2);
+			add(book.getTitle(), keys);
+			add(book.getAuthor(), keys);
+			keysByBook.put(book.getId(), keys);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void remove(Long bookId) {
+		lock.writeLock().lock();
+		try {
+			unindex(bookId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public List<String> suggest(String prefix, int limit) {
+		String key = TextNormalizer.phrase(prefix);
+		if (key.isEmpty() || limit < 1) {
+			return Collections.emptyList();
+		}
+		lock.readLock().lock();
+		try {
+			Node node = root;
+			for (int i = 0; i < Math.min(key.length(), MAX_DEPTH) && node != null; i++) {
+				node = node.child(key.charAt(i));
+			}
+			if (node == null) {
+				return Collections.emptyList();
+			}
+			Stream<Suggestion> completions = key.length() > MAX_DEPTH
+					? node.endings().filter(s -> s.completes(key)).sorted(RANKING)
+					: Arrays.stream(node.top);
+			return completions.limit(Math.min(limit, MAX_SUGGESTIONS)).map(s -> s.text).collect(Collectors.toList());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void add(String text, List<String> keys) {
+		String key = TextNormalizer.phrase(text);
+		if (key.isEmpty()) {
+			return;
+		}
+		Suggestion suggestion = suggestions.computeIfAbsent(key, k -> new Suggestion(k, text.trim()));
+		suggestion.books++;
+		keys.add(key);
+		update(suggestion, true);
+	}
+
+	private void unindex(Long bookId) {
+		List<String> keys = keysByBook.remove(bookId);
+		if (keys == null) {
+			return;
+		}
+		for (String key : keys) {
+			Suggestion suggestion = suggestions.get(key);
+			suggestion.books--;
+			if (suggestion.books == 0) {
+				suggestions.remove(key);
+			}
+			update(suggestion, false);
+		}
+	}
+
+	/**
+	 * Walks every path of the suggestion, adding or removing it where the path ends,
+	 * and re-ranks the nodes on the way back up since its count changed.
+	 */
+	private void update(Suggestion suggestion, boolean increased) {
+		for (int start : wordStarts(suggestion.key)) {
+			update(root, suggestion, start, 0, increased);
+		}
+	}
+
+	private boolean update(Node node, Suggestion suggestion, int start, int depth, boolean increased) {
+		boolean present = suggestion.books > 0;
+		int position = start + depth;
+		if (depth == MAX_DEPTH || position == suggestion.key.length()) {
+			if (present) {
+				node.addEnding(suggestion);
+			} else {
+				node.removeEnding(suggestion);
+			}
+		} else {
+			char c = suggestion.key.charAt(position);
+			Node child = present ? node.addChild(c) : node.child(c);
+			if (child != null && update(child, suggestion, start, depth + 1, increased)) {
+				node.removeChild(c);
+			}
+		}
+		if (increased) {
+			promote(node, suggestion);
+		} else {
+			rank(node);
+		}
+		return node.isEmpty();
+	}
+
+	/**
+	 * A suggestion whose count went up can only move up, so it is bubbled into place
+	 * instead of ranking the whole node again.
+	 */
+	private static void promote(Node node, Suggestion suggestion) {
+		Suggestion[] top = node.top;
+		int at = Arrays.asList(top).indexOf(suggestion);
+		if (at >= 0) {
+			top = top.clone();
+		} else if (top.length < MAX_SUGGESTIONS) {
+			top = Arrays.copyOf(top, top.length + 1);
+			at = top.length - 1;
+		} else if (RANKING.compare(suggestion, top[top.length - 1]) < 0) {
+			top = top.clone();
+			at = top.length - 1;
+		} else {
+			return;
+		}
+		while (at > 0 && RANKING.compare(suggestion, top[at - 1]) < 0) {
+			top[at] = top[at - 1];
+			at--;
+		}
+		top[at] = suggestion;
+		node.top = top;
+	}
+
+	private static void rank(Node node) {
+		node.top = Stream.concat(
+					node.endings(),
+					node.children().flatMap(child -> Arrays.stream(child.top)))
+				.distinct()
+				.sorted(RANKING)
+				.limit(MAX_SUGGESTIONS)
+				.toArray(Suggestion[]::new);
+	}
+
+	private static List<Integer> wordStarts(String key) {
+		List<Integer> starts = new ArrayList<>();
+		starts.add(0);
+		for (int i = key.indexOf(' '); i >= 0; i = key.indexOf(' ', i + 1)) {
+			int end = key.indexOf(' ', i + 1);
+			String word = key.substring(i + 1, end < 0 ? key.length() : end);
+			if (!TextNormalizer.isStopword(word)) {
+				starts.add(i + 1);
+			}
+		}
+		return starts;
+	}
+
+	/**
+	 * Most nodes sit on a single path and many are leaves, so children are kept in arrays
+	 * sorted by character instead of a map, and the arrays and the endings set are only
+	 * allocated once the node needs them.
+	 */
+	private static final class Node {
+
+		static final Suggestion[] EMPTY = new Suggestion[0];
+
+		char[] labels;
+		Node[] children;
+		Set<Suggestion> endings;
+		Suggestion[] top = EMPTY;
+
+		Node child(char c) {
+			int at = labels == null ? -1 : Arrays.binarySearch(labels, c);
+			return at < 0 ? null : children[at];
+		}
+
+		Node addChild(char c) {
+			int at = labels == null ? -1 : Arrays.binarySearch(labels, c);
+			if (at >= 0) {
+				return children[at];
+			}
+			at = -at - 1;
+			int length = labels == null ? 0 : labels.length;
+			char[] newLabels = new char[length + 1];
+			Node[] newChildren = new Node[length + 1];
+			if (length > 0) {
+				System.arraycopy(labels, 0, newLabels, 0, at);
+				System.arraycopy(children, 0, newChildren, 0, at);
+				System.arraycopy(labels, at, newLabels, at + 1, length - at);
+				System.arraycopy(children, at, newChildren, at + 1, length - at);
+			}
+			newLabels[at] = c;
+			newChildren[at] = new Node();
+			labels = newLabels;
+			children = newChildren;
+			return newChildren[at];
+		}
+
+		void removeChild(char c) {
+			int at = labels == null ? -1 : Arrays.binarySearch(labels, c);
+			if (at < 0) {
+				return;
+			}
+			if (labels.length == 1) {
+				labels = null;
+				children = null;
+				return;
+			}
+			char[] newLabels = new char[labels.length - 1];
+			Node[] newChildren = new Node[labels.length - 1];
+			System.arraycopy(labels, 0, newLabels, 0, at);
+			System.arraycopy(children, 0, newChildren, 0, at);
+			System.arraycopy(labels, at + 1, newLabels, at, newLabels.length - at);
+			System.arraycopy(children, at + 1, newChildren, at, newChildren.length - at);
+			labels = newLabels;
+			children = newChildren;
+		}
+
+		Stream<Node> children() {
+			return children == null ? Stream.empty() : Arrays.stream(children);
+		}
+
+		void addEnding(Suggestion suggestion) {
+			if (endings == null) {
+				endings = new HashSet<>(2);
+			}
+			endings.add(suggestion);
+		}
+
+		void removeEnding(Suggestion suggestion) {
+			if (endings != null && endings.remove(suggestion) && endings.isEmpty()) {
+				endings = null;
+			}
+		}
+
+		Stream<Suggestion> endings() {
+			return endings == null ? Stream.empty() : endings.stream();
+		}
+
+		boolean isEmpty() {
+			return labels == null && endings == null;
+		}
+
+	}
+
+	private static final class Suggestion {
+
+		final String key;
+		final String text;
+		int books;
+
+		Suggestion(String key, String text) {
+			this.key = key;
+			this.text = text;
+		}
+
+		boolean completes(String prefix) {
+			return key.startsWith(prefix) || key.contains(" " + prefix);
+		}
+
+	}
+
+}
@@ -0,0 +1,29 @@
+package br.com.gsr.libraryapi.service.impl;
+
+import java.util.Locale;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+
+final class ConstraintViolations {
+
+	private ConstraintViolations() {
+	}
+
+	/**
+	 * Databases decorate the violated constraint name differently (H2 reports
+	 * {@code "PUBLIC.UK_BOOK_ISBN_INDEX_1 ON PUBLIC.BOOK(ISBN) ..."}), so the
+	 * name is matched by containment, ignoring case.
+	 */
+	static boolean isViolationOf(DataIntegrityViolationException ex, String constraintName) {
+		for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+			if (cause instanceof ConstraintViolationException) {
+				String violated = ((ConstraintViolationException) cause).getConstraintName();
+				return violated != null
+						&& violated.toLowerCase(Locale.ROOT).contains(constraintName.toLowerCase(Locale.ROOT));
+			}
+		}
+		return false;
+	}
+
+}
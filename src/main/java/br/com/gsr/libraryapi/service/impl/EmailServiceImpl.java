@@ -1,37 +1,241 @@
 package br.com.gsr.libraryapi.service.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+import br.com.gsr.libraryapi.config.MailDispatchProperties;
+import br.com.gsr.libraryapi.config.ThreadingProperties;
+import br.com.gsr.libraryapi.config.Threads;
 import br.com.gsr.libraryapi.service.EmailService;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Sends mail from a bounded queue on a pool of worker threads, so callers never wait
+ * for the SMTP server.
+ *
+ * Every recipient gets its own message. A worker takes up to a batch of messages
+ * from the queue and sends them over a single SMTP connection, throttled by a token
+ * bucket. Messages that fail are put back in the queue after an exponential backoff
+ * until they run out of attempts. A single message is tried once, its caller
+ * keeps track of the retries.
+ */
+@Slf4j
 @Service
-@RequiredArgsConstructor
 public class EmailServiceImpl implements EmailService{
 
+	private static final long POLL_MILLIS = 200;
+
 	@Value("${application.mail.default-rementent}")
 	private String remetent;
-	
+
 	private final JavaMailSender javaMailSender;
-	
+	private final MailDispatchProperties properties;
+	private final BlockingQueue<Delivery> queue;
+	private final Set<Delivery> waitingRetry = ConcurrentHashMap.newKeySet();
+	private final TokenBucket rateLimit;
+	private final ExecutorService workers;
+	private final ScheduledExecutorService retries;
+	private volatile boolean stopped;
+
+	private final Counter sent;
+	private final Counter failed;
+	private final Counter retried;
+	private final Counter rejected;
+	private final Timer batches;
+
+	public EmailServiceImpl(JavaMailSender javaMailSender, MailDispatchProperties properties,
+			ThreadingProperties threading, MeterRegistry registry) {
+		this.javaMailSender = javaMailSender;
+		this.properties = properties;
+		this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+		this.rateLimit = new TokenBucket(properties.getRatePerSecond(), properties.getBurst());
+		this.workers = Executors.newFixedThreadPool(properties.getWorkers(), Threads.of(threading, "mail-dispatch-"));
+		this.retries = Executors.newSingleThreadScheduledExecutor(Threads.platform("mail-retry-"));
+
+		Gauge.builder("mail.dispatch.queue", queue, BlockingQueue::size)
+			.description("Messages waiting to be sent")
+			.register(registry);
+		this.sent = registry.counter("mail.dispatch.sent");
+		this.failed = registry.counter("mail.dispatch.failed");
+		this.retried = registry.counter("mail.dispatch.retried");
+		this.rejected = registry.counter("mail.dispatch.rejected");
+		this.batches = registry.timer("mail.dispatch.batch");
+	}
+
+	@PostConstruct
+	public void start() {
+		for (int i = 0; i < properties.getWorkers(); i++) {
+			workers.execute(this::work);
+		}
+	}
+
+	@Override
+	public CompletableFuture<Void> sendMails(String subject, String mensagem, List<String> emailsList) {
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[emailsList.size()];
+		for (int i = 0; i < futures.length; i++) {
+			futures[i] = enqueue(message(subject, mensagem, emailsList.get(i)), properties.getMaxAttempts());
+		}
+		return CompletableFuture.allOf(futures);
+	}
+
 	@Override
-	public void sendMails(String mensagem, List<String> emailsList) {
+	public CompletableFuture<Void> sendMail(String subject, String mensagem, String email) {
+		return enqueue(message(subject, mensagem, email), 1);
+	}
+
+	/**
+	 * Waits for the queued messages to be sent, up to the shutdown timeout. Messages
+	 * still waiting for a retry are failed right away.
+	 */
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		stopped = true;
+		retries.shutdownNow();
+		for (Delivery delivery : waitingRetry) {
+			giveUp(delivery, new RejectedExecutionException("Mail dispatcher stopped."));
+		}
+		workers.shutdown();
+		if (!workers.awaitTermination(properties.getShutdownTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+			workers.shutdownNow();
+		}
+		Delivery delivery;
+		while ((delivery = queue.poll()) != null) {
+			giveUp(delivery, new RejectedExecutionException("Mail dispatcher stopped."));
+		}
+	}
 
-		String[] mails = emailsList.toArray(new String[emailsList.size()]);
-		
+	private void work() {
+		List<Delivery> batch = new ArrayList<>(properties.getBatchSize());
+		try {
+			while (!stopped || !queue.isEmpty()) {
+				Delivery first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, properties.getBatchSize() - 1);
+				rateLimit.acquire(batch.size());
+				batches.record(() -> send(batch));
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			batch.forEach(delivery -> giveUp(delivery, e));
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void send(List<Delivery> batch) {
+		SimpleMailMessage[] messages = batch.stream().map(delivery -> delivery.message).toArray(SimpleMailMessage[]::new);
+		Map<Object, Exception> failures = Collections.emptyMap();
+		MailException batchFailure = null;
+		try {
+			javaMailSender.send(messages);
+		} catch (MailSendException e) {
+			failures = e.getFailedMessages();
+			// without failed messages nothing was sent, e.g. the server could not be reached
+			batchFailure = failures.isEmpty() ? e : null;
+		} catch (MailException e) {
+			batchFailure = e;
+		}
+		for (Delivery delivery : batch) {
+			Exception failure = batchFailure != null ? batchFailure : failures.get(delivery.message);
+			if (failure == null) {
+				sent.increment();
+				delivery.future.complete(null);
+			} else {
+				retry(delivery, failure);
+			}
+		}
+	}
+
+	private void retry(Delivery delivery, Exception failure) {
+		if (stopped || ++delivery.attempts >= delivery.maxAttempts) {
+			giveUp(delivery, failure);
+			return;
+		}
+		retried.increment();
+		long backoff = properties.getInitialBackoff().toMillis() << (delivery.attempts - 1);
+		waitingRetry.add(delivery);
+		try {
+			retries.schedule(() -> {
+				waitingRetry.remove(delivery);
+				if (!queue.offer(delivery)) {
+					rejected.increment();
+					giveUp(delivery, new RejectedExecutionException("Mail queue is full."));
+				}
+			}, backoff, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			waitingRetry.remove(delivery);
+			giveUp(delivery, failure);
+		}
+	}
+
+	private void giveUp(Delivery delivery, Exception failure) {
+		// counted before completing, so whoever waits on the future sees the metric
+		if (!delivery.future.isDone()) {
+			failed.increment();
+			log.error("Could not send mail to {}", String.join(",", delivery.message.getTo()), failure);
+			delivery.future.completeExceptionally(failure);
+		}
+	}
+
+	private CompletableFuture<Void> enqueue(SimpleMailMessage message, int maxAttempts) {
+		Delivery delivery = new Delivery(message, maxAttempts);
+		if (stopped || !queue.offer(delivery)) {
+			rejected.increment();
+			log.warn("Mail queue full or stopped, dropping message to {}", String.join(",", message.getTo()));
+			delivery.future.completeExceptionally(new RejectedExecutionException("Mail queue is full."));
+		}
+		return delivery.future;
+	}
+
+	private SimpleMailMessage message(String subject, String mensagem, String email) {
 		SimpleMailMessage mailMessage = new SimpleMailMessage();
 		mailMessage.setFrom(remetent);
-		mailMessage.setSubject("Livro com empréstimo atrasado");
+		mailMessage.setSubject(subject);
 		mailMessage.setText(mensagem);
-		mailMessage.setTo(mails);
-		
-		javaMailSender.send(mailMessage);
-		
+		mailMessage.setTo(email);
+		return mailMessage;
+	}
+
+	private static final class Delivery {
+
+		final SimpleMailMessage message;
+		final int maxAttempts;
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+		int attempts;
+
+		Delivery(SimpleMailMessage message, int maxAttempts) {
+			this.message = message;
+			this.maxAttempts = maxAttempts;
+		}
+
 	}
 
 }
@@ -0,0 +1,52 @@
+package br.com.gsr.libraryapi.service.impl;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import br.com.gsr.libraryapi.api.model.repository.JobLockRepository;
+import br.com.gsr.libraryapi.service.JobLockService;
+
+/**
+ * Leases kept in the job_lock table, shared by every node using the same database.
+ * Each lock is a row updated only when its lease expired or belongs to this node, so
+ * concurrent attempts are decided by the database and exactly one node wins.
+ */
+@Service
+public class JobLockServiceImpl implements JobLockService {
+
+	private JobLockRepository repository;
+	private String nodeId;
+
+	public JobLockServiceImpl(JobLockRepository repository,
+			@Value("${application.scheduling.node-id:${random.uuid}}") String nodeId) {
+		this.repository = repository;
+		this.nodeId = nodeId;
+	}
+
+	@Override
+	public boolean tryLock(String name, Duration lease) {
+		LocalDateTime now = LocalDateTime.now();
+		if (repository.acquire(name, nodeId, now.plus(lease), now) == 1) {
+			return true;
+		}
+		if (repository.existsById(name)) {
+			return false;
+		}
+		// first run of the job anywhere: whoever inserts the row first holds it
+		try {
+			return repository.insert(name, nodeId, now.plus(lease)) == 1;
+		} catch (DataIntegrityViolationException ex) {
+			return false;
+		}
+	}
+
+	@Override
+	public void unlock(String name) {
+		repository.release(name, nodeId, LocalDateTime.now());
+	}
+
+}
@@ -2,34 +2,86 @@ package br.com.gsr.libraryapi.service.impl;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import br.com.gsr.libraryapi.api.dto.LoanDTO;
 import br.com.gsr.libraryapi.api.dto.LoanFilterDTO;
 import br.com.gsr.libraryapi.api.model.entity.Book;
 import br.com.gsr.libraryapi.api.model.entity.Loan;
+import br.com.gsr.libraryapi.api.model.repository.LateLoan;
 import br.com.gsr.libraryapi.api.model.repository.LoanRepository;
 import br.com.gsr.libraryapi.exception.BusinessException;
 import br.com.gsr.libraryapi.service.LoanService;
+import br.com.gsr.libraryapi.service.OutboxService;
+import br.com.gsr.libraryapi.service.TableChangeService;
 
 @Service
 public class LoanServiceImpl implements LoanService {
 
+	private static final int EXPORT_CLEAR_INTERVAL = 500;
+	private static final String RECEIPT_SUBJECT = "Empréstimo registrado";
+	private static final String RECEIPT_MESSAGE = "Empréstimo do livro %s registrado em %s.";
+	
 	private LoanRepository repository;
+	private OutboxService outboxService;
+	private TableChangeService tableChangeService;
+	
+	@PersistenceContext
+	private EntityManager entityManager;
 	
-	public LoanServiceImpl(LoanRepository repository) {
+	public LoanServiceImpl(LoanRepository repository, OutboxService outboxService,
+			TableChangeService tableChangeService) {
 		this.repository = repository;
+		this.outboxService = outboxService;
+		this.tableChangeService = tableChangeService;
 	}
 
 	@Override
+	@Transactional
 	public Loan save(Loan loan) {
-		if (repository.existsByBookAndNotReturned(loan.getBook())) {
-			throw new BusinessException("Book already loaned.");
+		Loan saved = checkBook(() -> repository.saveAndFlush(loan));
+		tableChangeService.changed(TableChangeService.LOANS);
+		sendReceipt(saved);
+		return saved;
+	}
+
+	@Override
+	@Transactional
+	public List<Loan> saveAll(List<Loan> loans) {
+		Set<Long> bookIds = loans.stream().map(loan -> loan.getBook().getId()).collect(Collectors.toSet());
+		Set<Long> loaned = bookIds.isEmpty() ? Collections.emptySet() : repository.findActiveBookIds(bookIds);
+		List<Loan> newLoans = loans.stream()
+				.filter(loan -> !loaned.contains(loan.getBook().getId()))
+				.collect(Collectors.toList());
+		checkBook(() -> {
+			repository.saveAll(newLoans);
+			repository.flush();
+			return newLoans;
+		});
+		if (!newLoans.isEmpty()) {
+			tableChangeService.changed(TableChangeService.LOANS);
 		}
-		return this.repository.save(loan);
+		newLoans.forEach(this::sendReceipt);
+		return newLoans;
 	}
 
 	@Override
@@ -38,25 +90,114 @@ public class LoanServiceImpl implements LoanService {
 	}
 
 	@Override
-	public Loan update(Loan loan) {
-		return repository.save(loan);
+	@Transactional
+	public List<Loan> updateReturned(Map<Long, Boolean> returnedById) {
+		if (returnedById.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<Loan> loans = repository.findAllByIdWithBook(returnedById.keySet());
+		loans.forEach(loan -> loan.setReturned(returnedById.get(loan.getId())));
+		checkBook(() -> {
+			repository.flush();
+			return loans;
+		});
+		if (!loans.isEmpty()) {
+			tableChangeService.changed(TableChangeService.LOANS);
+		}
+		return loans;
+	}
+
+	@Override
+	@Transactional
+	public boolean updateReturned(Long id, Boolean returned) {
+		boolean updated = checkBook(() -> Boolean.TRUE.equals(returned)
+				? repository.markReturned(id)
+				: repository.markNotReturned(id, returned)) > 0;
+		if (updated) {
+			tableChangeService.changed(TableChangeService.LOANS);
+		}
+		return updated;
+	}
+
+	@Override
+	public List<Loan> findAfter(LoanFilterDTO filterDTO, Long afterId, int limit) {
+		return repository.findByFilterAfter(filterDTO, afterId, limit);
+	}
+
+	@Override
+	public Page<LoanDTO> findDTO(LoanFilterDTO filterDTO, Pageable pageable) {
+		return repository.findDTOByFilter(filterDTO, pageable);
 	}
 
 	@Override
-	public Page<Loan> find(LoanFilterDTO filterDTO, Pageable pageable) {
-		return repository.findByBookIsbnOrCustomer(filterDTO.getIsbn(), filterDTO.getCustomer(), pageable);
+	public Slice<LoanDTO> findDTOSlice(LoanFilterDTO filterDTO, Pageable pageable) {
+		return repository.findDTOSliceByFilter(filterDTO, pageable);
 	}
 
 	@Override
-	public Page<Loan> getLoansByBook(Book book, Pageable pageable) {
-		return repository.findByBook(book, pageable);
+	public long getChangeCount() {
+		return tableChangeService.changes(TableChangeService.LOANS, TableChangeService.BOOKS);
 	}
 
 	@Override
-	public List<Loan> getAllLateLoans() {
+	public Page<LoanDTO> getLoanDTOsByBook(Long bookId, Pageable pageable) {
+		return repository.findDTOByBookId(bookId, pageable);
+	}
+
+	@Override
+	public Slice<LoanDTO> getLoanDTOSliceByBook(Long bookId, Pageable pageable) {
+		return repository.findDTOSliceByBookId(bookId, pageable);
+	}
+
+	@Override
+	public List<LateLoan> getLateLoansAfter(LocalDate date, int shards, int shard, Long afterId, int limit) {
 		final Integer loanDays = 4;
-		LocalDate threeDaysAgo = LocalDate.now().minusDays(loanDays);
-		return repository.findByLoansDateLessThanAndNotReturned(threeDaysAgo);
-	}	
+		LocalDate lateDate = date.minusDays(loanDays);
+		return repository.findLateLoansAfter(lateDate, shards, shard, afterId, PageRequest.of(0, limit));
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public void exportLoans(Consumer<Loan> consumer) {
+		try (Stream<Loan> loans = repository.streamAll()) {
+			int consumed = 0;
+			for (Iterator<Loan> it = loans.iterator(); it.hasNext();) {
+				consumer.accept(it.next());
+				if (++consumed % EXPORT_CLEAR_INTERVAL == 0) {
+					entityManager.clear();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The receipt goes to the outbox in the loan's transaction, so it is mailed only if
+	 * the loan is committed.
+	 */
+	private void sendReceipt(Loan loan) {
+		if (loan.getCustomerEmail() != null) {
+			String title = loan.getBook() == null ? null : loan.getBook().getTitle();
+			outboxService.enqueue(RECEIPT_SUBJECT, String.format(RECEIPT_MESSAGE, title, loan.getLoanDate()),
+					Collections.singletonList(loan.getCustomerEmail()));
+		}
+	}
+
+	/**
+	 * Books are resolved through the second-level cache, which may still hold one deleted
+	 * on another node; the foreign key then rejects the loan.
+	 */
+	private <T> T checkBook(Supplier<T> write) {
+		try {
+			return write.get();
+		} catch (DataIntegrityViolationException ex) {
+			if (ConstraintViolations.isViolationOf(ex, Loan.UK_ACTIVE_BOOK)) {
+				throw new BusinessException("Book already loaned.");
+			}
+			if (ConstraintViolations.isViolationOf(ex, Loan.FK_BOOK)) {
+				throw new BusinessException("Book not found for informed isbn");
+			}
+			throw ex;
+		}
+	}
 
 }
@@ -0,0 +1,81 @@
+package br.com.gsr.libraryapi.service.impl;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import br.com.gsr.libraryapi.api.model.entity.OutboxMessage;
+import br.com.gsr.libraryapi.api.model.repository.OutboxRepository;
+import br.com.gsr.libraryapi.config.OutboxProperties;
+import br.com.gsr.libraryapi.service.OutboxService;
+
+/**
+ * Outbox backed by the outbox_message table.
+ *
+ * Claiming reads free ids and leases them with a conditional update, the portable
+ * equivalent of {@code select ... for update skip locked}: when two drainers read the
+ * same ids, each row is updated by only one of them and the other gets fewer rows.
+ */
+@Service
+public class OutboxServiceImpl implements OutboxService {
+
+	private OutboxRepository repository;
+	private OutboxProperties properties;
+
+	public OutboxServiceImpl(OutboxRepository repository, OutboxProperties properties) {
+		this.repository = repository;
+		this.properties = properties;
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.MANDATORY)
+	public void enqueue(String subject, String message, Collection<String> recipients) {
+		LocalDateTime now = LocalDateTime.now();
+		List<OutboxMessage> messages = recipients.stream()
+				.filter(Objects::nonNull)
+				.map(recipient -> OutboxMessage.builder()
+						.recipient(recipient)
+						.subject(subject)
+						.message(message)
+						.createdAt(now)
+						.build())
+				.collect(Collectors.toList());
+		repository.saveAll(messages);
+	}
+
+	@Override
+	@Transactional
+	public List<OutboxMessage> claim(String owner, int limit) {
+		LocalDateTime now = LocalDateTime.now();
+		List<Long> ids = repository.findClaimableIds(now, properties.getMaxAttempts(), PageRequest.of(0, limit));
+		if (ids.isEmpty() || repository.claim(ids, owner, now.plus(properties.getLease()), now) == 0) {
+			return Collections.emptyList();
+		}
+		return repository.findByLeasedByOrderById(owner);
+	}
+
+	@Override
+	@Transactional
+	public void acknowledge(String owner, Collection<Long> ids) {
+		if (!ids.isEmpty()) {
+			repository.acknowledge(ids, owner);
+		}
+	}
+
+	@Override
+	@Transactional
+	public void release(String owner, Collection<Long> ids) {
+		if (!ids.isEmpty()) {
+			repository.release(ids, owner);
+		}
+	}
+
+}
@@ -0,0 +1,65 @@
+package br.com.gsr.libraryapi.service.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import br.com.gsr.libraryapi.api.model.repository.TableChangeRepository;
+import br.com.gsr.libraryapi.service.TableChangeService;
+
+@Service
+public class TableChangeServiceImpl implements TableChangeService {
+
+	static final int SLOTS = 8;
+
+	private final TableChangeRepository repository;
+
+	public TableChangeServiceImpl(TableChangeRepository repository) {
+		this.repository = repository;
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.MANDATORY)
+	public void changed(String table) {
+		String slot = slot(table, ThreadLocalRandom.current().nextInt(SLOTS));
+		if (repository.increment(slot) == 0) {
+			repository.insert(slot, table, 1L);
+		}
+	}
+
+	@Override
+	public long changes(String... tables) {
+		return repository.sumChanges(Arrays.asList(tables));
+	}
+
+	/**
+	 * Creates the counters up front, so writers only ever update them; a writer inserting
+	 * a missing one could collide with another node doing the same.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void createCounters() {
+		for (String table : new String[] { BOOKS, LOANS }) {
+			for (int i = 0; i < SLOTS; i++) {
+				String slot = slot(table, i);
+				if (!repository.existsById(slot)) {
+					try {
+						repository.insert(slot, table, 0L);
+					} catch (DataIntegrityViolationException ex) {
+						// created by another node in the meantime
+					}
+				}
+			}
+		}
+	}
+
+	private static String slot(String table, int index) {
+		return table + "-" + index;
+	}
+
+}
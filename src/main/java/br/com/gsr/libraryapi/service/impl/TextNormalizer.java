@@ -0,0 +1,63 @@
+package br.com.gsr.libraryapi.service.impl;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+final class TextNormalizer {
+
+	private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+	private static final Pattern SEPARATORS = Pattern.compile("[^\\p{Alnum}]+");
+
+	private static final Set<String> STOPWORDS = new HashSet<>(Arrays.asList(
+			"a", "as", "o", "os", "e", "de", "da", "das", "do", "dos", "em", "na", "nas", "no", "nos",
+			"um", "uma", "uns", "umas", "para", "por", "com", "sem", "ao", "aos", "the", "of", "and"));
+
+	private TextNormalizer() {
+	}
+
+	/**
+	 * Lower case without accents, so "Memórias Póstumas" and "memorias postumas" match.
+	 */
+	static String fold(String text) {
+		if (text == null) {
+			return "";
+		}
+		String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+		return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+	}
+
+	static List<String> tokens(String text) {
+		List<String> tokens = new ArrayList<>();
+		for (String token : SEPARATORS.split(fold(text))) {
+			if (!token.isEmpty() && !STOPWORDS.contains(token)) {
+				tokens.add(token);
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Folded text with punctuation collapsed into single spaces, stopwords kept.
+	 */
+	static String phrase(String text) {
+		return SEPARATORS.matcher(fold(text)).replaceAll(" ").trim();
+	}
+
+	static boolean isStopword(String token) {
+		return STOPWORDS.contains(token);
+	}
+
+	/**
+	 * ISBNs are indexed as a single token, ignoring hyphens and spaces.
+	 */
+	static String isbnToken(String isbn) {
+		return SEPARATORS.matcher(fold(isbn)).replaceAll("");
+	}
+
+}
@@ -0,0 +1,43 @@
+package br.com.gsr.libraryapi.service.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket refilled at a fixed rate up to a maximum burst.
+ *
+ * A caller asking for more tokens than are available takes them anyway and sleeps
+ * for the deficit, so batches larger than the burst still respect the average rate.
+ */
+class TokenBucket {
+
+	private final double tokensPerNano;
+	private final double capacity;
+	private double tokens;
+	private long refilledAt;
+
+	TokenBucket(double tokensPerSecond, int capacity) {
+		if (tokensPerSecond <= 0 || capacity < 1) {
+			throw new IllegalArgumentException("Rate and capacity must be positive.");
+		}
+		this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+		this.capacity = capacity;
+		this.tokens = capacity;
+		this.refilledAt = System.nanoTime();
+	}
+
+	void acquire(int permits) throws InterruptedException {
+		long waitNanos = reserve(permits);
+		if (waitNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+
+	synchronized long reserve(int permits) {
+		long now = System.nanoTime();
+		tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+		refilledAt = now;
+		tokens -= permits;
+		return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+	}
+
+}
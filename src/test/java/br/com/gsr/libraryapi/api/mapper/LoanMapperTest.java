@@ -0,0 +1,53 @@
+package br.com.gsr.libraryapi.api.mapper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import br.com.gsr.libraryapi.api.dto.BookDTO;
+import br.com.gsr.libraryapi.api.dto.LoanDTO;
+import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.api.model.entity.Loan;
+
+public class LoanMapperTest {
+
+	BookMapper bookMapper = new BookMapper();
+	LoanMapper loanMapper = new LoanMapper(bookMapper);
+	
+	@Test
+	@DisplayName("Deve mapear um empréstimo com o livro aninhado")
+	public void loanToDTOTest() {
+		Book book = Book.builder().id(1l).isbn("123").title("As aventuras").author("Fulano").build();
+		Loan loan = Loan.builder()
+				.id(2l)
+				.book(book)
+				.customer("Ciclano")
+				.customerEmail("customer@email.com")
+				.loanDate(LocalDate.now())
+				.build();
+		
+		LoanDTO dto = loanMapper.toDTO(loan);
+		
+		assertThat(dto.getId()).isEqualTo(2l);
+		assertThat(dto.getCustomer()).isEqualTo("Ciclano");
+		assertThat(dto.getEmail()).isEqualTo("customer@email.com");
+		assertThat(dto.getBook()).isEqualTo(new BookDTO(1l, "As aventuras", "Fulano", "123"));
+	}
+	
+	@Test
+	@DisplayName("Deve mapear um livro e seu DTO nos dois sentidos")
+	public void bookRoundTripTest() {
+		BookDTO dto = BookDTO.builder().id(1l).isbn("123").title("As aventuras").author("Fulano").build();
+		
+		Book book = bookMapper.toEntity(dto);
+		
+		assertThat(book.getId()).isEqualTo(1l);
+		assertThat(book.getLoans()).isNull();
+		assertThat(bookMapper.toDTO(book)).isEqualTo(dto);
+		assertThat(bookMapper.toDTO(null)).isNull();
+	}
+	
+}
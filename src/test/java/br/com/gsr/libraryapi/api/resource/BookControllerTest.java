@@ -2,13 +2,19 @@ package br.com.gsr.libraryapi.api.resource;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
+import org.assertj.core.api.Assertions;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -22,19 +28,26 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import br.com.gsr.libraryapi.api.dto.BookDTO;
+import br.com.gsr.libraryapi.api.dto.LoanDTO;
 import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.api.model.entity.Loan;
 import br.com.gsr.libraryapi.exception.BusinessException;
 import br.com.gsr.libraryapi.service.BookService;
+import br.com.gsr.libraryapi.service.BookSuggestService;
+import br.com.gsr.libraryapi.service.BookSearchService;
 import br.com.gsr.libraryapi.service.EmailService;
 import br.com.gsr.libraryapi.service.LoanService;
 
@@ -55,6 +68,12 @@ public class BookControllerTest {
 	@MockBean
 	LoanService loanService;
 	
+	@MockBean
+	BookSearchService searchService;
+	
+	@MockBean
+	BookSuggestService suggestService;
+	
 	@MockBean
 	EmailService emailService;
 	
@@ -151,6 +170,52 @@ public class BookControllerTest {
 	
 	}
 	
+	@Test
+	@DisplayName("Deve retornar o ETag do livro com a versão")
+	public void getBookETagTest() throws Exception{
+		Book book = Book.builder().id(1l).title("As aventuras").isbn("001").author("Artur").version(3l).build();
+		BDDMockito.given( service.getById(1l) ).willReturn(Optional.of(book));
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1")).accept(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+	}
+	
+	@Test
+	@DisplayName("Deve retornar not modified quando a versão do livro não mudou")
+	public void getBookNotModifiedTest() throws Exception{
+		Book book = Book.builder().id(1l).title("As aventuras").isbn("001").author("Artur").version(3l).build();
+		BDDMockito.given( service.getById(1l) ).willReturn(Optional.of(book));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(BOOK_API.concat("/1"))
+				.header(HttpHeaders.IF_NONE_MATCH, "\"3\"")
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+			.andExpect(status().isNotModified())
+			.andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+			.andExpect(content().string(""));
+		Mockito.verify(service, Mockito.never()).getVersion(anyLong());
+	}
+	
+	@Test
+	@DisplayName("Deve retornar o livro quando a versão mudou desde o ETag recebido")
+	public void getBookModifiedTest() throws Exception{
+		Book book = Book.builder().id(1l).title("As aventuras").isbn("001").author("Artur").version(4l).build();
+		BDDMockito.given( service.getById(1l) ).willReturn(Optional.of(book));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(BOOK_API.concat("/1"))
+				.header(HttpHeaders.IF_NONE_MATCH, "\"3\"")
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+			.andExpect(status().isOk())
+			.andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+			.andExpect(jsonPath("title").value("As aventuras"));
+	}
+	
 	@Test
 	@DisplayName("Deve retornar resource not found quando o livro procurado não existir")
 	public void bookNotFoundTest() throws Exception{
@@ -174,13 +239,14 @@ public class BookControllerTest {
 	public void deleteBookTest() throws Exception{
 		Long id = 1l;
 		
-		BDDMockito.given( service.getById(anyLong()) ).willReturn(Optional.of(Book.builder().id(id).build()));
+		BDDMockito.given( service.deleteById(id) ).willReturn(true);
 		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
 				.delete(BOOK_API.concat("/" + id))
 				.accept(MediaType.APPLICATION_JSON);
 		
 		mvc.perform(request)
 			.andExpect(status().isNoContent());
+		Mockito.verify(service, Mockito.never()).getById(anyLong());
 		
 	}
 	
@@ -190,7 +256,7 @@ public class BookControllerTest {
 		
 		Long id = 1l;
 		
-		BDDMockito.given( service.getById(anyLong()) ).willReturn(Optional.empty());
+		BDDMockito.given( service.deleteById(id) ).willReturn(false);
 		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
 				.delete(BOOK_API.concat("/" + id))
 				.accept(MediaType.APPLICATION_JSON);
@@ -210,8 +276,7 @@ public class BookControllerTest {
 		String json = new ObjectMapper().writeValueAsString(book);
 		
 		Book updatingBook = Book.builder().id(id).author("some author").title("some title").isbn("001").build();
-		BDDMockito.given( service.getById(anyLong()) ).willReturn(Optional.of(updatingBook));
-		BDDMockito.given( service.update(updatingBook) ).willReturn(updatingBook);
+		BDDMockito.given( service.updateTitleAndAuthor(id, "As Aventuras", "Artur") ).willReturn(Optional.of(updatingBook));
 		
 		//execucao
 		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
@@ -234,7 +299,7 @@ public class BookControllerTest {
 		
 		Book updatingBook = Book.builder().author("Artur").title("As Aventuras").isbn("001").build();
 		String json = new ObjectMapper().writeValueAsString(updatingBook);
-		BDDMockito.given( service.getById( anyLong()) ).willReturn(Optional.empty());
+		BDDMockito.given( service.updateTitleAndAuthor(Mockito.eq(1l), Mockito.any(), Mockito.any()) ).willReturn(Optional.empty());
 		
 		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
 				.put(BOOK_API.concat("/" + 1))
@@ -259,10 +324,10 @@ public class BookControllerTest {
 				.isbn(createNewBook().getIsbn())
 				.build();
 		
-		List<Book> list = new ArrayList<>();
-		list.add(book);
-		BDDMockito.given( service.find(Mockito.any(Book.class), Mockito.any(Pageable.class)) )
-			.willReturn( new PageImpl<Book>(list, PageRequest.of(0, 100), 1));
+		List<BookDTO> list = new ArrayList<>();
+		list.add(new BookDTO(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn()));
+		BDDMockito.given( service.findDTO(Mockito.any(Book.class), Mockito.any(Pageable.class)) )
+			.willReturn( new PageImpl<BookDTO>(list, PageRequest.of(0, 100), 1));
 		
 		String queryString = String.format("?title=%s&author=%s&page=0&size=100", 
 				book.getTitle(),
@@ -282,6 +347,265 @@ public class BookControllerTest {
 		
 	}
 	
+	@Test
+	@DisplayName("Deve filtrar livros sem contar o total quando withTotal=false")
+	public void findBooksWithoutTotalTest() throws Exception{
+		List<BookDTO> list = new ArrayList<>();
+		list.add(new BookDTO(1l, "As aventuras", "Artur", "001"));
+		BDDMockito.given( service.findDTOSlice(Mockito.any(Book.class), Mockito.any(Pageable.class)) )
+			.willReturn( new SliceImpl<BookDTO>(list, PageRequest.of(0, 100), false));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(BOOK_API.concat("?title=As&page=0&size=100&withTotal=false"))
+				.contentType(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("content", Matchers.hasSize(1)))
+			.andExpect( jsonPath("hasNext").value(false))
+			.andExpect( jsonPath("totalElements").doesNotExist())
+			.andExpect( jsonPath("pageable.pageSize").value(100))
+		;
+	}
+	
+	@Test
+	@DisplayName("Deve retornar not modified na listagem de livros sem consultar a página")
+	public void findBooksNotModifiedTest() throws Exception{
+		BDDMockito.given( service.getChangeCount() ).willReturn(1l);
+		BDDMockito.given( service.findDTO(Mockito.any(Book.class), Mockito.any(Pageable.class)) )
+			.willReturn( new PageImpl<BookDTO>(new ArrayList<>(), PageRequest.of(0, 10), 0));
+		
+		String etag = mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?title=As&page=0&size=10")))
+			.andExpect( status().isOk() )
+			.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?title=As&page=0&size=10")).header(HttpHeaders.IF_NONE_MATCH, etag))
+			.andExpect( status().isNotModified() );
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?title=As&page=1&size=10")).header(HttpHeaders.IF_NONE_MATCH, etag))
+			.andExpect( status().isOk() );
+		
+		BDDMockito.given( service.getChangeCount() ).willReturn(2l);
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?title=As&page=0&size=10")).header(HttpHeaders.IF_NONE_MATCH, etag))
+			.andExpect( status().isOk() );
+		Mockito.verify(service, Mockito.times(3)).findDTO(Mockito.any(Book.class), Mockito.any(Pageable.class));
+	}
+	
+	@Test
+	@DisplayName("Deve listar os empréstimos de um livro sem contar o total")
+	public void loansByBookWithoutTotalTest() throws Exception{
+		List<LoanDTO> list = new ArrayList<>();
+		list.add(new LoanDTO(2l, "Fulano", null, 1l, "As aventuras", "Artur", "001"));
+		BDDMockito.given( service.getVersion(1l) ).willReturn(Optional.of(0l));
+		BDDMockito.given( loanService.getLoanDTOSliceByBook(Mockito.eq(1l), Mockito.any(Pageable.class)) )
+			.willReturn( new SliceImpl<LoanDTO>(list, PageRequest.of(0, 10), false));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(BOOK_API.concat("/1/loans?page=0&size=10&withTotal=false"))
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("content", Matchers.hasSize(1)))
+			.andExpect( jsonPath("content[0].book.isbn").value("001"))
+			.andExpect( jsonPath("hasNext").value(false))
+		;
+	}
+	
+	@Test
+	@DisplayName("Deve filtrar livros por cursor")
+	public void findBooksAfterCursorTest() throws Exception{
+		List<Book> list = new ArrayList<>();
+		list.add(Book.builder().id(5l).title("As aventuras").author("Artur").isbn("001").build());
+		list.add(Book.builder().id(6l).title("As aventuras II").author("Artur").isbn("002").build());
+		BDDMockito.given( service.findAfter(Mockito.any(Book.class), Mockito.eq(4l), Mockito.eq(2)) )
+			.willReturn(list);
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(BOOK_API.concat("?title=As&size=1&after=" + Cursors.encode(4l)))
+				.contentType(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("content", Matchers.hasSize(1)))
+			.andExpect( jsonPath("content[0].id").value(5))
+			.andExpect( jsonPath("nextCursor").value(Cursors.encode(5l)))
+		;
+	}
+	
+	@Test
+	@DisplayName("Deve transmitir os livros filtrados em NDJSON, lendo por blocos")
+	public void streamBooksTest() throws Exception{
+		List<Book> firstChunk = new ArrayList<>();
+		for (long id = 1; id <= KeysetStreams.CHUNK_SIZE; id++) {
+			firstChunk.add(Book.builder().id(id).title("As aventuras").author("Artur").isbn("00" + id).build());
+		}
+		long lastId = KeysetStreams.CHUNK_SIZE + 1l;
+		List<Book> lastChunk = Arrays.asList(Book.builder().id(lastId).title("As aventuras").author("Artur").isbn("999").build());
+		BDDMockito.given( service.findAfter(Mockito.any(Book.class), Mockito.eq(0l), Mockito.eq(KeysetStreams.CHUNK_SIZE)) )
+			.willReturn(firstChunk);
+		BDDMockito.given( service.findAfter(Mockito.any(Book.class), Mockito.eq((long) KeysetStreams.CHUNK_SIZE), Mockito.eq(KeysetStreams.CHUNK_SIZE)) )
+			.willReturn(lastChunk);
+		
+		MvcResult result = mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/stream?author=Artur")))
+			.andExpect( request().asyncStarted() )
+			.andReturn();
+		
+		String body = mvc.perform(asyncDispatch(result))
+			.andExpect( status().isOk() )
+			.andExpect( content().contentType("application/x-ndjson") )
+			.andReturn().getResponse().getContentAsString();
+		
+		String[] lines = body.split("\n");
+		Assertions.assertThat(lines).hasSize(KeysetStreams.CHUNK_SIZE + 1);
+		Assertions.assertThat(lines[lines.length - 1]).contains("\"id\":" + lastId, "\"isbn\":\"999\"");
+		Mockito.verify(service, Mockito.times(2)).findAfter(Mockito.any(Book.class), Mockito.anyLong(), Mockito.anyInt());
+	}
+	
+	@Test
+	@DisplayName("Deve buscar livros por texto livre")
+	public void searchBooksTest() throws Exception{
+		List<Book> list = new ArrayList<>();
+		list.add(Book.builder().id(1l).title("Memórias Póstumas de Brás Cubas").author("Machado de Assis").isbn("001").build());
+		BDDMockito.given( searchService.search("memorias", 20) ).willReturn(list);
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(BOOK_API.concat("/search?q=memorias"))
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("$", Matchers.hasSize(1)))
+			.andExpect( jsonPath("[0].id").value(1))
+			.andExpect( jsonPath("[0].author").value("Machado de Assis"))
+		;
+	}
+	
+	@Test
+	@DisplayName("Deve retornar bad request ao buscar livros sem texto")
+	public void searchBooksWithoutQueryTest() throws Exception{
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(BOOK_API.concat("/search"))
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request).andExpect( status().isBadRequest() );
+	}
+	
+	@Test
+	@DisplayName("Deve sugerir títulos e autores a partir do prefixo digitado")
+	public void suggestBooksTest() throws Exception{
+		BDDMockito.given( suggestService.suggest("mach", 10) )
+			.willReturn(Arrays.asList("Machado de Assis", "Machado: uma biografia"));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(BOOK_API.concat("/suggest?q=mach"))
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("$", Matchers.hasSize(2)))
+			.andExpect( jsonPath("[0]").value("Machado de Assis"))
+		;
+	}
+	
+	@Test
+	@DisplayName("Deve criar livros em lote a partir de um array JSON, informando o resultado de cada item")
+	public void bulkCreateBooksTest() throws Exception{
+		mockSaveAll("999");
+		String json = "[{\"title\":\"A\",\"author\":\"Artur\",\"isbn\":\"001\"},"
+				+ "{\"title\":\"B\",\"author\":\"Artur\"},"
+				+ "{\"title\":\"C\",\"author\":\"Artur\",\"isbn\":\"001\"},"
+				+ "{\"title\":\"D\",\"author\":\"Artur\",\"isbn\":\"999\"}]";
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.post(BOOK_API.concat("/bulk"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content(json);
+		
+		mvc.perform(request)
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("$", hasSize(4)))
+			.andExpect( jsonPath("[0].status").value("CREATED"))
+			.andExpect( jsonPath("[0].id").value(1))
+			.andExpect( jsonPath("[1].status").value("INVALID"))
+			.andExpect( jsonPath("[1].errors[0]").value("isbn must not be empty"))
+			.andExpect( jsonPath("[2].status").value("DUPLICATE"))
+			.andExpect( jsonPath("[2].errors[0]").value("Isbn repetido na requisição."))
+			.andExpect( jsonPath("[3].status").value("DUPLICATE"))
+			.andExpect( jsonPath("[3].errors[0]").value("Isbn já cadastrado."))
+		;
+		Mockito.verify(service, Mockito.times(1)).saveAll(Mockito.anyList());
+	}
+	
+	@Test
+	@DisplayName("Deve criar livros em lote a partir de NDJSON e parar no primeiro item malformado")
+	public void bulkCreateBooksNdjsonTest() throws Exception{
+		mockSaveAll();
+		String ndjson = "{\"title\":\"A\",\"author\":\"Artur\",\"isbn\":\"001\"}\n"
+				+ "{\"title\":\"B\",\"author\":\"Artur\",\"isbn\":\"002\"}\n"
+				+ "{\"title\":\"C\",\n";
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.post(BOOK_API.concat("/bulk"))
+				.contentType("application/x-ndjson")
+				.accept(MediaType.APPLICATION_JSON)
+				.content(ndjson);
+		
+		mvc.perform(request)
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("$", hasSize(3)))
+			.andExpect( jsonPath("[0].status").value("CREATED"))
+			.andExpect( jsonPath("[1].status").value("CREATED"))
+			.andExpect( jsonPath("[1].id").value(2))
+			.andExpect( jsonPath("[2].status").value("INVALID"))
+			.andExpect( jsonPath("[2].errors[0]").value("Malformed JSON."))
+		;
+	}
+	
+	@Test
+	@DisplayName("Deve salvar um a um quando um isbn do lote for cadastrado concorrentemente")
+	public void bulkCreateBooksConcurrentDuplicateTest() throws Exception{
+		BDDMockito.given( service.saveAll(Mockito.anyList()) ).willThrow(new BusinessException("Isbn já cadastrado."));
+		BDDMockito.given( service.save(Mockito.argThat(book -> book != null && "001".equals(book.getIsbn()))) )
+			.willReturn(Book.builder().id(7l).isbn("001").build());
+		BDDMockito.given( service.save(Mockito.argThat(book -> book != null && "002".equals(book.getIsbn()))) )
+			.willThrow(new BusinessException("Isbn já cadastrado."));
+		String json = "[{\"title\":\"A\",\"author\":\"Artur\",\"isbn\":\"001\"},"
+				+ "{\"title\":\"B\",\"author\":\"Artur\",\"isbn\":\"002\"}]";
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.post(BOOK_API.concat("/bulk"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content(json);
+		
+		mvc.perform(request)
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("[0].status").value("CREATED"))
+			.andExpect( jsonPath("[0].id").value(7))
+			.andExpect( jsonPath("[1].status").value("DUPLICATE"))
+		;
+	}
+	
+	/**
+	 * Gives sequential ids to the books saved in bulk, except for the registered isbns.
+	 */
+	private void mockSaveAll(String... registeredIsbns) {
+		List<String> registered = Arrays.asList(registeredIsbns);
+		BDDMockito.given( service.saveAll(Mockito.anyList()) ).willAnswer(invocation -> {
+			List<Book> books = invocation.getArgument(0);
+			List<Book> saved = new ArrayList<>();
+			long id = 1;
+			for (Book book : books) {
+				if (!registered.contains(book.getIsbn())) {
+					book.setId(id++);
+					saved.add(book);
+				}
+			}
+			return saved;
+		});
+	}
+	
 	private Book createNewBook() {
 		return Book.builder().title("As aventuras").isbn("001").author("Artur").build();
 	}
@@ -0,0 +1,99 @@
+package br.com.gsr.libraryapi.api.resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import br.com.gsr.libraryapi.api.dto.LoanFilterDTO;
+import br.com.gsr.libraryapi.service.BookService;
+import br.com.gsr.libraryapi.service.EmailService;
+import br.com.gsr.libraryapi.service.LoanService;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@WebMvcTest(controllers = LoanController.class)
+@TestPropertySource(properties = {
+		"application.streams.pool-size=1",
+		"application.streams.queue-capacity=0"
+})
+public class LoanControllerStreamLimitTest {
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	ApplicationContext context;
+
+	@MockBean
+	private LoanService loanService;
+
+	@MockBean
+	private BookService bookService;
+
+	@MockBean
+	private EmailService emailService;
+
+	@Test
+	@DisplayName("Deve recusar com 503 um stream quando todas as threads de streaming estiverem ocupadas")
+	public void streamRejectedWhenPoolIsFullTest() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		BDDMockito.given( loanService.findAfter(Mockito.any(LoanFilterDTO.class), Mockito.anyLong(), Mockito.anyInt()) )
+			.willAnswer(invocation -> {
+				started.countDown();
+				release.await(5, TimeUnit.SECONDS);
+				return Collections.emptyList();
+			});
+
+		MvcResult first = mvc.perform(MockMvcRequestBuilders.get(LoanControllerTest.LOAN_API.concat("/stream")))
+			.andExpect( request().asyncStarted() )
+			.andReturn();
+		started.await(5, TimeUnit.SECONDS);
+
+		try {
+			mvc.perform(MockMvcRequestBuilders.get(LoanControllerTest.LOAN_API.concat("/stream")))
+				.andExpect( status().isServiceUnavailable() )
+				.andExpect( jsonPath("errors[0]").value("Too many streams in progress, try again.") );
+		} finally {
+			release.countDown();
+		}
+		mvc.perform(asyncDispatch(first))
+			.andExpect( status().isOk() );
+	}
+
+	@Test
+	@DisplayName("Deve manter o executor de tarefas do Spring Boot para o trabalho que não é streaming")
+	public void applicationTaskExecutorKeptTest() {
+		assertThat(context.getBean(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME))
+			.isInstanceOf(ThreadPoolTaskExecutor.class);
+		assertThat(context.getBeansOfType(Executor.class)).containsOnlyKeys(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME);
+	}
+
+}
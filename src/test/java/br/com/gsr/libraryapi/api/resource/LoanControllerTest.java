@@ -1,18 +1,29 @@
 package br.com.gsr.libraryapi.api.resource;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.BDDMockito;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,15 +33,19 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import br.com.gsr.libraryapi.api.dto.BulkReturnedLoanDTO;
 import br.com.gsr.libraryapi.api.dto.LoanDTO;
 import br.com.gsr.libraryapi.api.dto.LoanFilterDTO;
 import br.com.gsr.libraryapi.api.dto.ReturnedLoanDTO;
@@ -121,11 +136,9 @@ public class LoanControllerTest {
 	public void returnBookTest() throws Exception{
 		//cenario { returned: true }
 		ReturnedLoanDTO dto = ReturnedLoanDTO.builder().returned(true).build();
-		Loan loan = Loan.builder().id(1l).build();
 		String json = new ObjectMapper().writeValueAsString(dto);
 		
-		BDDMockito.given( loanService.getById(Mockito.anyLong()) )
-			.willReturn(Optional.of(loan));
+		BDDMockito.given( loanService.updateReturned(1l, true) ).willReturn(true);
 		
 		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
 				.patch(LOAN_API.concat("/1"))
@@ -135,7 +148,7 @@ public class LoanControllerTest {
 		
 		mvc.perform(request)
 			.andExpect( status().isOk() );
-		Mockito.verify(loanService, Mockito.times(1)).update(loan);
+		Mockito.verify(loanService, Mockito.never()).getById(Mockito.anyLong());
 	}
 	
 	@Test
@@ -144,7 +157,7 @@ public class LoanControllerTest {
 		ReturnedLoanDTO dto = ReturnedLoanDTO.builder().returned(true).build();
 		String json = new ObjectMapper().writeValueAsString(dto);
 		
-		BDDMockito.given( loanService.getById(Mockito.anyLong()) ).willReturn(Optional.empty());
+		BDDMockito.given( loanService.updateReturned(Mockito.anyLong(), Mockito.any()) ).willReturn(false);
 		
 		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
 				.patch(LOAN_API.concat("/1"))
@@ -170,10 +183,10 @@ public class LoanControllerTest {
 				.loanDate(LocalDate.now())
 				.build();
 		
-		List<Loan> list = new ArrayList<>();
-		list.add(loan);
-		BDDMockito.given( loanService.find(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class) ))
-			.willReturn( new PageImpl<Loan>(list, PageRequest.of(0, 100), 1));
+		List<LoanDTO> list = new ArrayList<>();
+		list.add(new LoanDTO(id, "Fulano", null, id, null, null, "321"));
+		BDDMockito.given( loanService.findDTO(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class) ))
+			.willReturn( new PageImpl<LoanDTO>(list, PageRequest.of(0, 100), 1));
 		
 		String queryString = String.format("?isbn=%s&customer=%s&page=0&size=100", loan.getBook().getIsbn(), loan.getCustomer());
 		
@@ -189,4 +202,276 @@ public class LoanControllerTest {
 			.andExpect( jsonPath("pageable.pageNumber").value(0))
 			;
 	}
+	
+	@Test
+	@DisplayName("Deve filtrar loans sem contar o total quando withTotal=false")
+	public void filterLoanWithoutTotalTest() throws Exception{
+		Loan loan = Loan.builder()
+				.book(Book.builder().id(1l).isbn("321").build())
+				.customer("Fulano")
+				.id(1l)
+				.build();
+		
+		List<LoanDTO> list = new ArrayList<>();
+		list.add(new LoanDTO(loan.getId(), loan.getCustomer(), null, 1l, null, null, "321"));
+		BDDMockito.given( loanService.findDTOSlice(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class) ))
+			.willReturn( new SliceImpl<LoanDTO>(list, PageRequest.of(0, 1), true));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(LOAN_API.concat("?customer=Fulano&page=0&size=1&withTotal=false"))
+				.accept(MediaType.APPLICATION_JSON);
+	
+		mvc.perform(request)
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("content", Matchers.hasSize(1)))
+			.andExpect( jsonPath("hasNext").value(true))
+			.andExpect( jsonPath("totalElements").doesNotExist())
+			;
+		Mockito.verify(loanService, Mockito.never()).findDTO(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class));
+	}
+	
+	@Test
+	@DisplayName("Deve filtrar loans pelo período da data de empréstimo")
+	public void filterLoanByLoanDateTest() throws Exception{
+		BDDMockito.given( loanService.findDTO(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class) ))
+			.willReturn( new PageImpl<LoanDTO>(new ArrayList<>(), PageRequest.of(0, 20), 0));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(LOAN_API.concat("?customer=Fulano&loanDateFrom=2021-01-01&loanDateTo=2021-01-31"))
+				.accept(MediaType.APPLICATION_JSON);
+	
+		mvc.perform(request)
+			.andExpect( status().isOk() );
+		
+		LoanFilterDTO filter = LoanFilterDTO.builder()
+				.customer("Fulano")
+				.loanDateFrom(LocalDate.of(2021, 1, 1))
+				.loanDateTo(LocalDate.of(2021, 1, 31))
+				.build();
+		Mockito.verify(loanService).findDTO(Mockito.eq(filter), Mockito.any(Pageable.class));
+	}
+	
+	@Test
+	@DisplayName("Deve filtrar loans por cursor")
+	public void filterLoanAfterCursorTest() throws Exception{
+		List<Loan> list = new ArrayList<>();
+		for (long id = 11; id <= 13; id++) {
+			list.add(Loan.builder().id(id).book(Book.builder().id(id).isbn("321").build()).customer("Fulano").build());
+		}
+		BDDMockito.given( loanService.findAfter(Mockito.any(LoanFilterDTO.class), Mockito.eq(10l), Mockito.eq(3)) )
+			.willReturn(list);
+		
+		String after = Cursors.encode(10l);
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(LOAN_API.concat("?customer=Fulano&size=2&after=" + after))
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("content", Matchers.hasSize(2)))
+			.andExpect( jsonPath("content[1].id").value(12))
+			.andExpect( jsonPath("nextCursor").value(Cursors.encode(12l)))
+			.andExpect( jsonPath("totalElements").doesNotExist())
+			;
+	}
+	
+	@Test
+	@DisplayName("Deve retornar a última página por cursor sem próximo cursor")
+	public void filterLoanLastCursorPageTest() throws Exception{
+		List<Loan> list = new ArrayList<>();
+		list.add(Loan.builder().id(1l).book(Book.builder().id(1l).isbn("321").build()).customer("Fulano").build());
+		BDDMockito.given( loanService.findAfter(Mockito.any(LoanFilterDTO.class), Mockito.eq(0l), Mockito.eq(21)) )
+			.willReturn(list);
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(LOAN_API.concat("?customer=Fulano&after="))
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("content", Matchers.hasSize(1)))
+			.andExpect( jsonPath("nextCursor").doesNotExist())
+			;
+	}
+	
+	@Test
+	@DisplayName("Deve retornar bad request para um cursor inválido")
+	public void invalidCursorTest() throws Exception{
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.get(LOAN_API.concat("?after=@@"))
+				.accept(MediaType.APPLICATION_JSON);
+		
+		mvc.perform(request)
+			.andExpect( status().isBadRequest() )
+			.andExpect( jsonPath("errors[0]").value("Invalid cursor"));
+	}
+	
+	@Test
+	@DisplayName("Deve transmitir os empréstimos filtrados em NDJSON")
+	public void streamLoansTest() throws Exception{
+		List<Loan> list = Arrays.asList(
+			Loan.builder().id(3l).book(Book.builder().id(1l).isbn("123").build()).customer("Fulano").customerEmail("fulano@email.com").build());
+		BDDMockito.given( loanService.findAfter(Mockito.any(LoanFilterDTO.class), Mockito.eq(0l), Mockito.eq(KeysetStreams.CHUNK_SIZE)) )
+			.willReturn(list);
+		
+		MvcResult result = mvc.perform(MockMvcRequestBuilders.get(LOAN_API.concat("/stream?customer=Fulano")))
+			.andExpect( request().asyncStarted() )
+			.andReturn();
+		
+		mvc.perform(asyncDispatch(result))
+			.andExpect( status().isOk() )
+			.andExpect( content().contentType("application/x-ndjson") )
+			.andExpect( content().string("{\"id\":3,\"isbn\":null,\"customer\":\"Fulano\",\"email\":\"fulano@email.com\","
+					+ "\"book\":{\"id\":1,\"title\":null,\"author\":null,\"isbn\":\"123\"}}\n") );
+		
+		Mockito.verify(loanService).findAfter(Mockito.argThat(filter -> "Fulano".equals(filter.getCustomer())),
+				Mockito.eq(0l), Mockito.eq(KeysetStreams.CHUNK_SIZE));
+	}
+	
+	@Test
+	@DisplayName("Deve exportar os empréstimos em NDJSON")
+	public void exportLoansNdjsonTest() throws Exception{
+		mockExport(
+			Loan.builder().id(1l).book(Book.builder().id(1l).isbn("123").build()).customer("Fulano").customerEmail("fulano@email.com").build(),
+			Loan.builder().id(2l).book(Book.builder().id(2l).isbn("456").build()).customer("Ciclano").build());
+		
+		MvcResult result = mvc.perform(MockMvcRequestBuilders.get(LOAN_API.concat("/export")))
+			.andExpect( request().asyncStarted() )
+			.andReturn();
+		
+		mvc.perform(asyncDispatch(result))
+			.andExpect( status().isOk() )
+			.andExpect( content().contentType("application/x-ndjson") )
+			.andExpect( header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"loans.ndjson\"") )
+			.andExpect( content().string(
+				"{\"id\":1,\"isbn\":null,\"customer\":\"Fulano\",\"email\":\"fulano@email.com\",\"book\":{\"id\":1,\"title\":null,\"author\":null,\"isbn\":\"123\"}}\n"
+				+ "{\"id\":2,\"isbn\":null,\"customer\":\"Ciclano\",\"email\":null,\"book\":{\"id\":2,\"title\":null,\"author\":null,\"isbn\":\"456\"}}\n") );
+	}
+	
+	@Test
+	@DisplayName("Deve exportar os empréstimos em CSV")
+	public void exportLoansCsvTest() throws Exception{
+		mockExport(Loan.builder()
+				.id(1l)
+				.book(Book.builder().id(7l).isbn("123").title("Memórias, \"Póstumas\"").author("Machado").build())
+				.customer("Fulano")
+				.customerEmail("fulano@email.com")
+				.build());
+		
+		MvcResult result = mvc.perform(MockMvcRequestBuilders.get(LOAN_API.concat("/export?format=csv")))
+			.andExpect( request().asyncStarted() )
+			.andReturn();
+		
+		mvc.perform(asyncDispatch(result))
+			.andExpect( status().isOk() )
+			.andExpect( content().contentType("text/csv;charset=UTF-8") )
+			.andExpect( content().string("id,customer,email,book_id,isbn,title,author\r\n"
+				+ "1,Fulano,fulano@email.com,7,123,\"Memórias, \"\"Póstumas\"\"\",Machado\r\n") );
+	}
+	
+	@Test
+	@DisplayName("Deve retornar bad request para um formato de exportação inválido")
+	public void exportLoansInvalidFormatTest() throws Exception{
+		mvc.perform(MockMvcRequestBuilders.get(LOAN_API.concat("/export?format=xml")))
+			.andExpect( status().isBadRequest() )
+			.andExpect( jsonPath("errors[0]").value("Invalid export format"));
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	@DisplayName("Deve realizar empréstimos em lote, informando o resultado de cada item")
+	public void bulkCreateLoansTest() throws Exception{
+		Book available = Book.builder().id(1l).isbn("001").build();
+		Book loaned = Book.builder().id(2l).isbn("002").build();
+		BDDMockito.given( bookService.getBooksByIsbn(new HashSet<>(Arrays.asList("001", "002", "404"))) )
+			.willReturn(Arrays.asList(available, loaned));
+		BDDMockito.given( loanService.saveAll(Mockito.anyList()) ).willAnswer(invocation -> {
+			List<Loan> loans = invocation.getArgument(0);
+			loans.stream().filter(loan -> loan.getBook() == available).forEach(loan -> loan.setId(10l));
+			return loans.subList(0, 1);
+		});
+		String json = "[{\"isbn\":\"001\",\"customer\":\"Fulano\",\"email\":\"fulano@email.com\"},"
+				+ "{\"isbn\":\"002\",\"customer\":\"Fulano\"},"
+				+ "{\"isbn\":\"404\",\"customer\":\"Fulano\"},"
+				+ "{\"isbn\":\"001\",\"customer\":\"Ciclano\"},"
+				+ "{\"isbn\":\"003\"}]";
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.post(LOAN_API.concat("/bulk"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content(json);
+		
+		mvc.perform(request)
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("$", Matchers.hasSize(5)))
+			.andExpect( jsonPath("[0].status").value("CREATED"))
+			.andExpect( jsonPath("[0].id").value(10))
+			.andExpect( jsonPath("[1].status").value("INVALID"))
+			.andExpect( jsonPath("[1].errors[0]").value("Book already loaned."))
+			.andExpect( jsonPath("[2].status").value("INVALID"))
+			.andExpect( jsonPath("[2].errors[0]").value("Book not found for informed isbn"))
+			.andExpect( jsonPath("[3].status").value("DUPLICATE"))
+			.andExpect( jsonPath("[4].status").value("INVALID"))
+			.andExpect( jsonPath("[4].errors[0]").value("customer must not be empty"))
+		;
+		
+		ArgumentCaptor<List<Loan>> saved = ArgumentCaptor.forClass(List.class);
+		Mockito.verify(loanService).saveAll(saved.capture());
+		assertThat(saved.getValue()).extracting(Loan::getCustomerEmail).containsExactly("fulano@email.com", null);
+	}
+	
+	@Test
+	@DisplayName("Deve devolver empréstimos em lote, informando o resultado de cada item")
+	public void bulkReturnLoansTest() throws Exception{
+		Map<Long, Boolean> expected = new HashMap<>();
+		expected.put(1l, true);
+		expected.put(2l, true);
+		BDDMockito.given( loanService.updateReturned(expected) )
+			.willReturn(Collections.singletonList(Loan.builder().id(1l).returned(true).build()));
+		String json = "[{\"id\":1,\"returned\":true},{\"id\":2,\"returned\":true},{\"id\":1,\"returned\":true},{\"returned\":true}]";
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.patch(LOAN_API.concat("/bulk"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content(json);
+		
+		mvc.perform(request)
+			.andExpect( status().isOk() )
+			.andExpect( jsonPath("$", Matchers.hasSize(4)))
+			.andExpect( jsonPath("[0].status").value("UPDATED"))
+			.andExpect( jsonPath("[1].status").value("NOT_FOUND"))
+			.andExpect( jsonPath("[1].errors[0]").value("Loan not found"))
+			.andExpect( jsonPath("[2].status").value("DUPLICATE"))
+			.andExpect( jsonPath("[3].status").value("INVALID"))
+			.andExpect( jsonPath("[3].errors[0]").value("id must not be null"))
+		;
+	}
+	
+	@Test
+	@DisplayName("Deve retornar bad request para um lote grande demais")
+	public void bulkTooManyItemsTest() throws Exception{
+		String json = new ObjectMapper().writeValueAsString(Collections.nCopies(1_001, new BulkReturnedLoanDTO(1l, true)));
+		
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+				.patch(LOAN_API.concat("/bulk"))
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_JSON)
+				.content(json);
+		
+		mvc.perform(request)
+			.andExpect( status().isBadRequest() )
+			.andExpect( jsonPath("errors[0]").value("At most 1000 items per request"));
+		Mockito.verifyNoInteractions(loanService);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void mockExport(Loan... loans) {
+		BDDMockito.willAnswer(invocation -> {
+			Consumer<Loan> consumer = invocation.getArgument(0);
+			Arrays.stream(loans).forEach(consumer);
+			return null;
+		}).given(loanService).exportLoans(Mockito.any(Consumer.class));
+	}
 }
@@ -1,9 +1,21 @@
 package br.com.gsr.libraryapi.model.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,11 +23,22 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import br.com.gsr.libraryapi.api.dto.BookDTO;
 import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.api.model.entity.Loan;
 import br.com.gsr.libraryapi.api.model.repository.BookRepository;
+import br.com.gsr.libraryapi.api.model.repository.BookTombstoneRepository;
 import br.com.gsr.libraryapi.service.EmailService;
 
 @ExtendWith(SpringExtension.class)
@@ -29,45 +52,64 @@ public class BookRepositoryTest {
 	@Autowired
 	BookRepository bookRepository;
 	
+	@Autowired
+	BookTombstoneRepository tombstoneRepository;
+	
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+	
+	@Autowired
+	PlatformTransactionManager transactionManager;
+	
 	@MockBean
 	EmailService emailService;
 	
 	@Test
-	@DisplayName("Deve retornar verdadeiro quando existir o livro na base com o isbn informado")
-	public void returnTrueWhenIsbnExists() {
-		//cenario
-		String isbn = "123";
-		entityManager.persist(createNewBook(isbn));
+	@DisplayName("Deve obter um livro pelo id")
+	public void getByIdTest( ) {
+		Book book = createNewBook("123");
+		entityManager.persist(book);
 		
-		//execucao
-		boolean exists = bookRepository.existsByIsbn(isbn);
+		Optional<Book> foundBook = bookRepository.findById(book.getId());
 		
-		//verificacao
-		assertThat(exists).isTrue();
+		assertThat( foundBook.isPresent() ).isTrue();
 	}
 	
 	@Test
-	@DisplayName("Deve retornar falso quando não existir o livro na base com o isbn informado")
-	public void returnFalseWhenIsbnExists() {
-		//cenario
-		String isbn = "123";
-		
-		//execucao
-		boolean exists = bookRepository.existsByIsbn(isbn);
+	@DisplayName("Deve obter um livro pelo isbn como id natural")
+	public void findByNaturalIdTest() {
+		Book book = createNewBook("123");
+		entityManager.persist(book);
 		
-		//verificacao
-		assertThat(exists).isFalse();
+		assertThat( bookRepository.findByNaturalId("123") ).contains(book);
+		assertThat( bookRepository.findByNaturalId("321") ).isEmpty();
 	}
 	
 	@Test
-	@DisplayName("Deve obter um livro pelo id")
-	public void getByIdTest( ) {
-		Book book = createNewBook("123");
-		entityManager.persist(book);
-		
-		Optional<Book> foundBook = bookRepository.findById(book.getId());
-		
-		assertThat( foundBook.isPresent() ).isTrue();
+	@DisplayName("Deve ler o livro do cache de segundo nível pelo id e pelo isbn")
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void secondLevelCacheTest() {
+		// each call in its own session: entries cached by a transaction are only read by later ones
+		SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+		Statistics statistics = sessionFactory.getStatistics();
+		Book book = bookRepository.save(createNewBook("123"));
+		try {
+			sessionFactory.getCache().evictAllRegions();
+			bookRepository.findById(book.getId());
+			bookRepository.findByNaturalId("123");
+			statistics.clear();
+			
+			Optional<Book> byId = bookRepository.findById(book.getId());
+			Optional<Book> byIsbn = bookRepository.findByNaturalId("123");
+			
+			assertThat( byId.get().getTitle() ).isEqualTo(book.getTitle());
+			assertThat( byIsbn.get().getId() ).isEqualTo(book.getId());
+			assertThat( statistics.getPrepareStatementCount() ).isZero();
+			assertThat( statistics.getDomainDataRegionStatistics(Book.CACHE_REGION).getHitCount() ).isEqualTo(2);
+			assertThat( statistics.getDomainDataRegionStatistics(Book.ISBN_CACHE_REGION).getHitCount() ).isEqualTo(1);
+		} finally {
+			bookRepository.deleteById(book.getId());
+		}
 	}
 	
 	@Test
@@ -79,6 +121,53 @@ public class BookRepositoryTest {
 		assertThat( book.getId() ).isNotNull();
 	}
 	
+	@Test
+	@DisplayName("Deve gravar um livro sem ler nem limpar o cache dos demais")
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void writeThroughEntityCacheTest() {
+		SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+		Statistics statistics = sessionFactory.getStatistics();
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		Book edited = bookRepository.save(createNewBook("123"));
+		Book deleted = bookRepository.save(createNewBook("456"));
+		Book other = bookRepository.save(createNewBook("789"));
+		try {
+			sessionFactory.getCache().evictAllRegions();
+			Arrays.asList(edited, deleted, other).forEach(book -> bookRepository.findById(book.getId()));
+			statistics.clear();
+			
+			transaction.executeWithoutResult(status -> bookRepository.findForWrite(edited.getId()).get().setTitle("Outro título"));
+			transaction.executeWithoutResult(status -> bookRepository.delete(bookRepository.findForWrite(deleted.getId()).get()));
+			assertThat( statistics.getDomainDataRegionStatistics(Book.CACHE_REGION).getHitCount() ).isZero();
+			statistics.clear();
+			
+			assertThat( bookRepository.findById(other.getId()) ).isPresent();
+			assertThat( bookRepository.findById(edited.getId()).get().getTitle() ).isEqualTo("Outro título");
+			assertThat( statistics.getDomainDataRegionStatistics(Book.CACHE_REGION).getHitCount() ).isEqualTo(2);
+			assertThat( bookRepository.findById(deleted.getId()) ).isEmpty();
+		} finally {
+			bookRepository.deleteById(edited.getId());
+			bookRepository.deleteById(other.getId());
+		}
+	}
+	
+	@Test
+	@DisplayName("Não deve deletar um livro com empréstimos")
+	public void deleteWithLoansTest() {
+		Book book = entityManager.persist(createNewBook("123"));
+		entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+		entityManager.flush();
+		
+		Throwable exception = catchThrowable(() -> {
+			bookRepository.delete(book);
+			bookRepository.flush();
+		});
+		
+		assertThat(exception).isInstanceOf(DataIntegrityViolationException.class);
+		assertThat(exception.getCause()).isInstanceOf(ConstraintViolationException.class);
+		assertThat(((ConstraintViolationException) exception.getCause()).getConstraintName()).containsIgnoringCase(Loan.FK_BOOK);
+	}
+	
 	@Test
 	@DisplayName("Deve deletar um livro")
 	public void deleteBookTest() {
@@ -92,6 +181,149 @@ public class BookRepositoryTest {
 		
 	}
 	
+	@Test
+	@DisplayName("Não deve permitir dois livros com o mesmo isbn")
+	public void uniqueIsbnTest() {
+		entityManager.persist(createNewBook("123"));
+		
+		Throwable exception = catchThrowable(() -> bookRepository.saveAndFlush(createNewBook("123")));
+		
+		assertThat(exception).isInstanceOf(DataIntegrityViolationException.class);
+	}
+	
+	@Test
+	@DisplayName("Deve retornar apenas os isbns já cadastrados")
+	public void findExistingIsbnsTest() {
+		entityManager.persist(createNewBook("123"));
+		entityManager.persist(createNewBook("456"));
+		
+		Set<String> existing = bookRepository.findExistingIsbns(Arrays.asList("123", "456", "789"));
+		
+		assertThat(existing).containsExactlyInAnyOrder("123", "456");
+	}
+	
+	@Test
+	@DisplayName("Deve buscar livros após o cursor pelo início do título, ignorando maiúsculas")
+	public void findByFilterAfterTest() {
+		Book first = entityManager.persist(createNewBook("123"));
+		Book second = entityManager.persist(createNewBook("456"));
+		entityManager.persist(Book.builder().title("Outro livro").author("Fulano").isbn("789").build());
+		
+		Book filter = Book.builder().title("as aven").build();
+		
+		List<Book> page = bookRepository.findByFilterAfter(filter, 0l, 10);
+		List<Book> afterFirst = bookRepository.findByFilterAfter(filter, first.getId(), 10);
+		
+		assertThat(page).containsExactly(first, second);
+		assertThat(afterFirst).containsExactly(second);
+	}
+	
+	@Test
+	@DisplayName("Deve buscar uma fatia de livros pelo início do autor")
+	public void findSliceByFilterTest() {
+		entityManager.persist(createNewBook("123"));
+		entityManager.persist(Book.builder().title("Outro livro").author("Beltrano").isbn("789").build());
+		
+		Slice<BookDTO> result = bookRepository.findDTOSliceByFilter(Book.builder().author("FUL").build(), PageRequest.of(0, 10));
+		
+		assertThat(result.getContent()).extracting(BookDTO::getIsbn).containsExactly("123");
+		assertThat(result.hasNext()).isFalse();
+	}
+	
+	@Test
+	@DisplayName("Deve filtrar livros direto em DTOs sem carregar entidades")
+	public void findDTOByFilterTest() {
+		Book book = entityManager.persist(createNewBook("123"));
+		entityManager.persist(Book.builder().title("Outro").author("Ciclano").isbn("456").build());
+		entityManager.flush();
+		entityManager.clear();
+		
+		Page<BookDTO> page = bookRepository.findDTOByFilter(Book.builder().title("as av").build(), PageRequest.of(0, 10));
+		Slice<BookDTO> byId = bookRepository.findDTOSliceByFilter(Book.builder().id(book.getId()).build(), PageRequest.of(0, 10));
+		
+		assertThat(page.getContent()).containsExactly(new BookDTO(book.getId(), "As aventuras", "Fulano", "123"));
+		assertThat(page.getTotalElements()).isEqualTo(1);
+		assertThat(byId.getContent()).extracting(BookDTO::getIsbn).containsExactly("123");
+		assertThat(entityManager.getEntityManager().contains(book)).isFalse();
+	}
+	
+	@Test
+	@DisplayName("Deve tratar curingas do LIKE no filtro como caracteres comuns")
+	public void findDTOByFilterEscapingWildcardsTest() {
+		entityManager.persist(Book.builder().title("100% certo").author("Fulano").isbn("123").build());
+		entityManager.persist(Book.builder().title("1000 dicas").author("Fulano").isbn("456").build());
+		
+		Page<BookDTO> percent = bookRepository.findDTOByFilter(Book.builder().title("100%").build(), PageRequest.of(0, 10));
+		Page<BookDTO> underscore = bookRepository.findDTOByFilter(Book.builder().title("10_0").build(), PageRequest.of(0, 10));
+		
+		assertThat(percent.getContent()).extracting(BookDTO::getIsbn).containsExactly("123");
+		assertThat(underscore.getContent()).isEmpty();
+	}
+	
+	@Test
+	@DisplayName("Deve contar o total quando a primeira página estiver cheia")
+	public void findDTOByFilterCountTest() {
+		entityManager.persist(createNewBook("123"));
+		entityManager.persist(createNewBook("456"));
+		entityManager.persist(createNewBook("789"));
+		
+		Page<BookDTO> page = bookRepository.findDTOByFilter(Book.builder().author("ful").build(), PageRequest.of(0, 2));
+		
+		assertThat(page.getContent()).hasSize(2);
+		assertThat(page.getTotalElements()).isEqualTo(3);
+	}
+	
+	@Test
+	@DisplayName("Deve mudar a versão de um livro ao atualizá-lo")
+	public void findVersionByIdTest() {
+		Book book = entityManager.persist(createNewBook("123"));
+		entityManager.flush();
+		
+		book.setTitle("As aventuras II");
+		entityManager.flush();
+		
+		assertThat(bookRepository.findVersionById(book.getId())).contains(1l);
+		assertThat(bookRepository.findVersionById(book.getId() + 1)).isEmpty();
+	}
+	
+	@Test
+	@DisplayName("Deve buscar os livros alterados após o instante em ordem de id")
+	public void findChangedAfterTest() {
+		Book old = entityManager.persist(createNewBook("123"));
+		entityManager.flush();
+		Instant since = old.getChangedAt();
+		Book created = entityManager.persist(createNewBook("456"));
+		Book edited = entityManager.persist(createNewBook("789"));
+		entityManager.flush();
+		edited.setTitle("Outro título");
+		entityManager.flush();
+		
+		List<Book> changed = bookRepository.findChangedAfter(since, 0l, PageRequest.of(0, 10));
+		List<Book> afterCursor = bookRepository.findChangedAfter(since, created.getId(), PageRequest.of(0, 10));
+		
+		assertThat(changed).extracting(Book::getId).containsExactly(created.getId(), edited.getId());
+		assertThat(afterCursor).extracting(Book::getId).containsExactly(edited.getId());
+		assertThat(edited.getChangedAt()).isAfter(created.getChangedAt());
+	}
+	
+	@Test
+	@DisplayName("Deve buscar os livros excluídos após o instante e expirar as lápides antigas")
+	public void tombstonesTest() {
+		Instant now = Instant.now();
+		tombstoneRepository.insert(1l, now.minus(Duration.ofDays(2)));
+		tombstoneRepository.insert(2l, now);
+		tombstoneRepository.insert(3l, now);
+		
+		List<Long> deleted = tombstoneRepository.findDeletedAfter(now.minusSeconds(60), 0l, PageRequest.of(0, 10));
+		List<Long> afterCursor = tombstoneRepository.findDeletedAfter(now.minusSeconds(60), 2l, PageRequest.of(0, 10));
+		int expired = tombstoneRepository.deleteDeletedBefore(now.minus(Duration.ofDays(1)));
+		
+		assertThat(deleted).containsExactly(2l, 3l);
+		assertThat(afterCursor).containsExactly(3l);
+		assertThat(expired).isEqualTo(1);
+		assertThat(tombstoneRepository.count()).isEqualTo(2);
+	}
+	
 	public static Book createNewBook(String isbn) {
 		return Book.builder().title("As aventuras").author("Fulano").isbn(isbn).build();
 	}
@@ -2,10 +2,20 @@ package br.com.gsr.libraryapi.model.repository;
 
 import static br.com.gsr.libraryapi.model.repository.BookRepositoryTest.createNewBook;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,24 +23,32 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import br.com.gsr.libraryapi.api.dto.LoanDTO;
+import br.com.gsr.libraryapi.api.dto.LoanFilterDTO;
 import br.com.gsr.libraryapi.api.model.entity.Book;
 import br.com.gsr.libraryapi.api.model.entity.Loan;
+import br.com.gsr.libraryapi.api.model.repository.LateLoan;
 import br.com.gsr.libraryapi.api.model.repository.LoanRepository;
 import br.com.gsr.libraryapi.service.EmailService;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
-@DataJpaTest
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 public class LoanRepositoryTest {
 
 	@Autowired
 	private TestEntityManager entityManager;
 
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
 	@Autowired
 	private LoanRepository repository;
 	
@@ -39,23 +57,72 @@ public class LoanRepositoryTest {
 	
 
 	@Test
-	@DisplayName("Deve verificar se existe empréstimo não devolvido para o livro")
-	public void existsByBookAndNotReturnedTest() {
+	@DisplayName("Não deve permitir dois empréstimos em aberto para o mesmo livro")
+	public void singleActiveLoanPerBookTest() {
+		Book book = createAndPersistLoan(LocalDate.now()).getBook();
+		
+		Loan secondLoan = Loan.builder().book(book).customer("Ciclano").loanDate(LocalDate.now()).build();
+		Throwable exception = catchThrowable(() -> repository.saveAndFlush(secondLoan));
+		
+		assertThat(exception).isInstanceOf(DataIntegrityViolationException.class);
+	}
+	
+	@Test
+	@DisplayName("Deve liberar o livro para um novo empréstimo após a devolução")
+	public void loanAfterReturnTest() {
 		Loan loan = createAndPersistLoan(LocalDate.now());
-		Book book = loan.getBook();
-
-		// execucao
-		boolean exists = repository.existsByBookAndNotReturned(book);
-
-		assertThat(exists).isTrue();
+		loan.setReturned(true);
+		repository.saveAndFlush(loan);
+		
+		Loan newLoan = repository.saveAndFlush(
+				Loan.builder().book(loan.getBook()).customer("Ciclano").loanDate(LocalDate.now()).build());
+		
+		assertThat(loan.getActiveBookId()).isNull();
+		assertThat(newLoan.getActiveBookId()).isEqualTo(loan.getBook().getId());
+		assertThat(repository.findActiveBookIds(Collections.singleton(loan.getBook().getId()))).containsExactly(loan.getBook().getId());
 	}
 
 	@Test
-	@DisplayName("Deve buscar um empréstimo pelo isbn do livro ou customer")
-	public void findByBookIsbnOrCustomerTest() {
+	@DisplayName("Deve devolver e reabrir um empréstimo em uma única atualização")
+	public void markReturnedTest() {
+		Loan loan = createAndPersistLoan(LocalDate.now());
+		entityManager.flush();
+		
+		assertThat(repository.markReturned(loan.getId())).isEqualTo(1);
+		Loan returned = entityManager.find(Loan.class, loan.getId());
+		assertThat(returned.getReturned()).isTrue();
+		assertThat(returned.getActiveBookId()).isNull();
+		assertThat(returned.getVersion()).isEqualTo(1l);
+		
+		assertThat(repository.markNotReturned(loan.getId(), false)).isEqualTo(1);
+		Loan reopened = entityManager.find(Loan.class, loan.getId());
+		assertThat(reopened.getReturned()).isFalse();
+		assertThat(reopened.getActiveBookId()).isEqualTo(loan.getBook().getId());
+		assertThat(reopened.getVersion()).isEqualTo(2l);
+		
+		assertThat(repository.markReturned(loan.getId() + 100)).isZero();
+	}
+	
+	@Test
+	@DisplayName("Não deve reabrir um empréstimo de um livro com outro empréstimo em aberto")
+	public void markNotReturnedActiveBookTest() {
+		Loan loan = createAndPersistLoan(LocalDate.now());
+		loan.setReturned(true);
+		entityManager.flush();
+		entityManager.persist(Loan.builder().book(loan.getBook()).customer("Ciclano").loanDate(LocalDate.now()).build());
+		entityManager.flush();
+		
+		Throwable exception = catchThrowable(() -> repository.markNotReturned(loan.getId(), false));
+		
+		assertThat(exception).isInstanceOf(DataIntegrityViolationException.class);
+	}
+	
+	@Test
+	@DisplayName("Deve buscar um empréstimo pelo isbn do livro e customer")
+	public void findByFilterTest() {
 		createAndPersistLoan(LocalDate.now());
 		
-		Page<Loan> result = repository.findByBookIsbnOrCustomer("123", "Fulano", PageRequest.of(0, 100));
+		Page<LoanDTO> result = repository.findDTOByFilter(filter("123", "Fulano"), PageRequest.of(0, 100));
 		
 		assertThat(result.getContent()).hasSize(1);
 		assertThat(result.getPageable().getPageSize()).isEqualTo(100);
@@ -65,23 +132,217 @@ public class LoanRepositoryTest {
 	}
 	
 	@Test
-	@DisplayName("Deve obter empréstimos cuja data empréstimo for menor ou igual a três dias atrás e não retornados")
-	public void findByLoanDateLessThanAndNotReturnedTest() {
-		Loan loan = createAndPersistLoan(LocalDate.now().minusDays(5));		
-		List<Loan> lateLoans = repository.findByLoansDateLessThanAndNotReturned(LocalDate.now().minusDays(4));
+	@DisplayName("Deve exigir todas as propriedades informadas no filtro")
+	public void findByFilterMatchesAllPropertiesTest() {
+		createAndPersistLoan(LocalDate.now());
+		
+		assertThat(repository.findDTOByFilter(filter("123", "Ciclano"), PageRequest.of(0, 10))).isEmpty();
+		assertThat(repository.findDTOByFilter(filter("321", "Fulano"), PageRequest.of(0, 10))).isEmpty();
+		assertThat(repository.findDTOByFilter(filter("", "Fulano"), PageRequest.of(0, 10))).hasSize(1);
+		assertThat(repository.findDTOByFilter(filter(null, null), PageRequest.of(0, 10))).hasSize(1);
+	}
+	
+	@Test
+	@DisplayName("Deve filtrar empréstimos pelo período da data de empréstimo")
+	public void findByFilterLoanDateRangeTest() {
+		Loan old = createAndPersistLoan(LocalDate.now().minusDays(10));
+		old.setReturned(true);
+		entityManager.flush();
+		Loan recent = entityManager.persist(Loan.builder().book(old.getBook()).customer("Fulano").loanDate(LocalDate.now()).build());
+		
+		LoanFilterDTO lastWeek = LoanFilterDTO.builder().customer("Fulano").loanDateFrom(LocalDate.now().minusDays(7)).build();
+		LoanFilterDTO untilLastWeek = LoanFilterDTO.builder().isbn("123").loanDateTo(LocalDate.now().minusDays(7)).build();
+		
+		assertThat(repository.findDTOByFilter(lastWeek, PageRequest.of(0, 10)))
+			.extracting(LoanDTO::getId)
+			.containsExactly(recent.getId());
+		assertThat(repository.findDTOByFilter(untilLastWeek, PageRequest.of(0, 10)))
+			.extracting(LoanDTO::getId)
+			.containsExactly(old.getId());
+	}
+	
+	@Test
+	@DisplayName("Deve buscar uma fatia de empréstimos pelo isbn do livro e customer")
+	public void findSliceByFilterTest() {
+		Loan loan = createAndPersistLoan(LocalDate.now());
+		entityManager.persist(Loan.builder().book(loan.getBook()).customer("Fulano").returned(true).loanDate(LocalDate.now()).build());
+		
+		Slice<LoanDTO> first = repository.findDTOSliceByFilter(filter("123", "Fulano"), PageRequest.of(0, 1));
+		Slice<LoanDTO> second = repository.findDTOSliceByFilter(filter("123", "Fulano"), PageRequest.of(1, 1));
+		
+		assertThat(first.getContent()).hasSize(1);
+		assertThat(first.hasNext()).isTrue();
+		assertThat(second.getContent()).hasSize(1);
+		assertThat(second.hasNext()).isFalse();
+	}
+	
+	@Test
+	@DisplayName("Deve buscar empréstimos após o cursor em ordem de id")
+	public void findByFilterAfterTest() {
+		Loan first = createAndPersistLoan(LocalDate.now());
+		Loan second = Loan.builder().book(first.getBook()).customer("Fulano").returned(true).loanDate(LocalDate.now()).build();
+		entityManager.persist(second);
+		
+		List<Loan> result = repository.findByFilterAfter(filter("123", "Fulano"), first.getId(), 10);
+		
+		assertThat(result).containsExactly(second);
+	}
+	
+	@Test
+	@DisplayName("Deve retornar apenas os livros com empréstimo em aberto")
+	public void findActiveBookIdsTest() {
+		Book loaned = createAndPersistLoan(LocalDate.now()).getBook();
+		Book available = entityManager.persist(createNewBook("456"));
+		
+		Set<Long> active = repository.findActiveBookIds(Arrays.asList(loaned.getId(), available.getId()));
+		
+		assertThat(active).containsExactly(loaned.getId());
+	}
+	
+	@Test
+	@DisplayName("Deve buscar empréstimos com o livro pelos ids")
+	public void findAllByIdWithBookTest() {
+		Loan loan = createAndPersistLoan(LocalDate.now());
+		entityManager.flush();
+		entityManager.clear();
+		
+		List<Loan> result = repository.findAllByIdWithBook(Arrays.asList(loan.getId(), -1l));
+		
+		assertThat(result).extracting(Loan::getId).containsExactly(loan.getId());
+		assertThat(result.get(0).getBook().getIsbn()).isEqualTo("123");
+	}
+	
+	@Test
+	@DisplayName("Deve percorrer todos os empréstimos com o livro em ordem de id")
+	public void streamAllTest() {
+		Loan first = createAndPersistLoan(LocalDate.now());
+		Loan second = Loan.builder().book(first.getBook()).customer("Ciclano").returned(true).loanDate(LocalDate.now()).build();
+		entityManager.persist(second);
+		entityManager.flush();
+		entityManager.clear();
+		
+		List<Loan> result;
+		try (Stream<Loan> loans = repository.streamAll()) {
+			result = loans.collect(Collectors.toList());
+		}
+		
+		assertThat(result).extracting(Loan::getId).containsExactly(first.getId(), second.getId());
+		assertThat(result).extracting(loan -> loan.getBook().getIsbn()).containsOnly("123");
+	}
+	
+	@Test
+	@DisplayName("Deve buscar os empréstimos atrasados após o cursor, em ordem de id")
+	public void findLateLoansAfterTest() {
+		Loan first = createAndPersistLoan(LocalDate.now().minusDays(5));
+		first.setCustomerEmail("fulano@email.com");
+		Book book = entityManager.persist(createNewBook("456"));
+		Loan second = entityManager.persist(Loan.builder().book(book).customer("Ciclano").loanDate(LocalDate.now().minusDays(6)).build());
+		Book returnedBook = entityManager.persist(createNewBook("789"));
+		entityManager.persist(Loan.builder().book(returnedBook).customer("Beltrano").returned(true).loanDate(LocalDate.now().minusDays(6)).build());
+		entityManager.flush();
+		
+		List<LateLoan> firstChunk = repository.findLateLoansAfter(LocalDate.now().minusDays(4), 1, 0, 0l, PageRequest.of(0, 1));
+		List<LateLoan> secondChunk = repository.findLateLoansAfter(LocalDate.now().minusDays(4), 1, 0, first.getId(), PageRequest.of(0, 1));
+		
+		assertThat(firstChunk).extracting(LateLoan::getId).containsExactly(first.getId());
+		assertThat(firstChunk.get(0).getCustomerEmail()).isEqualTo("fulano@email.com");
+		assertThat(firstChunk.get(0).getLoanDate()).isEqualTo(LocalDate.now().minusDays(5));
+		assertThat(secondChunk).extracting(LateLoan::getId).containsExactly(second.getId());
+	}
+	
+	@Test
+	@DisplayName("Deve dividir os empréstimos atrasados entre os shards pelo id")
+	public void findLateLoansAfterShardTest() {
+		Loan first = createAndPersistLoan(LocalDate.now().minusDays(5));
+		Book book = entityManager.persist(createNewBook("456"));
+		Loan second = entityManager.persist(Loan.builder().book(book).customer("Ciclano").loanDate(LocalDate.now().minusDays(6)).build());
+		entityManager.flush();
+		Loan even = first.getId() % 2 == 0 ? first : second;
+		Loan odd = even == first ? second : first;
+		
+		List<LateLoan> shard0 = repository.findLateLoansAfter(LocalDate.now().minusDays(4), 2, 0, 0l, PageRequest.of(0, 10));
+		List<LateLoan> shard1 = repository.findLateLoansAfter(LocalDate.now().minusDays(4), 2, 1, 0l, PageRequest.of(0, 10));
+		
+		assertThat(shard0).extracting(LateLoan::getId).containsExactly(even.getId());
+		assertThat(shard1).extracting(LateLoan::getId).containsExactly(odd.getId());
+	}
+	
+	@Test
+	@DisplayName("Deve buscar cursores de empréstimos com os livros em uma única consulta")
+	public void findAfterStatementCountTest() {
+		persistLoansOfCustomer("Fulano", 3);
+		
+		Statistics statistics = statistics();
+		List<Loan> after = repository.findByFilterAfter(filter(null, "Fulano"), 0l, 3);
+		after.forEach(loan -> loan.getBook().getTitle());
+		assertThat(after).hasSize(3);
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+	}
+	
+	@Test
+	@DisplayName("Deve buscar um empréstimo pelo id com o livro sem consultas extras")
+	public void findByIdStatementCountTest() {
+		Loan loan = createAndPersistLoan(LocalDate.now());
+		entityManager.flush();
+		entityManager.clear();
+		
+		Statistics statistics = statistics();
+		repository.findById(loan.getId()).get().getBook().getTitle();
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+	}
+	
+	@Test
+	@DisplayName("Deve buscar empréstimos direto em DTOs sem carregar entidades")
+	public void findDTOByFilterTest() {
+		persistLoansOfCustomer("Fulano", 3);
 		
-		assertThat( lateLoans ).hasSize(1).contains(loan);
+		Statistics statistics = statistics();
+		Page<LoanDTO> page = repository.findDTOByFilter(filter(null, "Fulano"), PageRequest.of(0, 2));
 		
+		assertThat(page.getContent()).hasSize(2);
+		assertThat(page.getTotalElements()).isEqualTo(3);
+		assertThat(page.getContent().get(0).getCustomer()).isEqualTo("Fulano");
+		assertThat(page.getContent().get(0).getBook().getTitle()).isEqualTo("As aventuras");
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+		assertThat(statistics.getEntityLoadCount()).isZero();
 	}
 	
 	@Test
-	@DisplayName("Deve retornar uma lista vazia ao não encontrar livros com entrega atrasada")
-	public void notFindByLoanDateLessThanAndNotReturnedTest() {
-		createAndPersistLoan(LocalDate.now());		
-		List<Loan> lateLoans = repository.findByLoansDateLessThanAndNotReturned(LocalDate.now().minusDays(4));
+	@DisplayName("Deve buscar os empréstimos de um livro direto em DTOs")
+	public void findDTOByBookIdTest() {
+		Loan loan = createAndPersistLoan(LocalDate.now());
+		loan.setCustomerEmail("fulano@email.com");
+		entityManager.flush();
+		entityManager.clear();
 		
-		assertThat( lateLoans ).isEmpty();
+		Statistics statistics = statistics();
+		Slice<LoanDTO> slice = repository.findDTOSliceByBookId(loan.getBook().getId(), PageRequest.of(0, 10));
 		
+		assertThat(slice.getContent()).hasSize(1);
+		assertThat(slice.getContent().get(0).getId()).isEqualTo(loan.getId());
+		assertThat(slice.getContent().get(0).getEmail()).isEqualTo("fulano@email.com");
+		assertThat(slice.getContent().get(0).getBook().getIsbn()).isEqualTo("123");
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+		assertThat(statistics.getEntityLoadCount()).isZero();
+	}
+	
+	private void persistLoansOfCustomer(String customer, int count) {
+		for (int i = 0; i < count; i++) {
+			Book book = entityManager.persist(createNewBook("isbn-" + i));
+			entityManager.persist(Loan.builder().book(book).customer(customer).loanDate(LocalDate.now()).build());
+		}
+		entityManager.flush();
+		entityManager.clear();
+	}
+	
+	private static LoanFilterDTO filter(String isbn, String customer) {
+		return LoanFilterDTO.builder().isbn(isbn).customer(customer).build();
+	}
+	
+	private Statistics statistics() {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		return statistics;
 	}
 	
 	public Loan createAndPersistLoan(LocalDate loanDate) {
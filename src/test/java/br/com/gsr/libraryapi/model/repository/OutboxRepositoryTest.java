@@ -0,0 +1,114 @@
+package br.com.gsr.libraryapi.model.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import br.com.gsr.libraryapi.api.model.entity.OutboxMessage;
+import br.com.gsr.libraryapi.api.model.repository.OutboxRepository;
+import br.com.gsr.libraryapi.service.EmailService;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+public class OutboxRepositoryTest {
+
+	@Autowired
+	TestEntityManager entityManager;
+
+	@Autowired
+	OutboxRepository repository;
+
+	@MockBean
+	EmailService emailService;
+
+	@Test
+	@DisplayName("Deve buscar apenas mensagens livres ou com a reserva expirada")
+	public void findClaimableIdsTest() {
+		LocalDateTime now = LocalDateTime.now();
+		OutboxMessage free = entityManager.persist(createMessage(null, null, 0));
+		OutboxMessage expired = entityManager.persist(createMessage("other", now.minusMinutes(1), 0));
+		entityManager.persist(createMessage("other", now.plusMinutes(1), 0));
+		entityManager.persist(createMessage(null, null, 10));
+
+		List<Long> ids = repository.findClaimableIds(now, 10, PageRequest.of(0, 10));
+
+		assertThat(ids).containsExactly(free.getId(), expired.getId());
+	}
+
+	@Test
+	@DisplayName("Deve reservar apenas as mensagens que continuam livres")
+	public void claimTest() {
+		LocalDateTime now = LocalDateTime.now();
+		OutboxMessage free = entityManager.persist(createMessage(null, null, 0));
+		OutboxMessage leased = entityManager.persist(createMessage("other", now.plusMinutes(1), 0));
+		entityManager.flush();
+
+		int claimed = repository.claim(Arrays.asList(free.getId(), leased.getId()), "me", now.plusMinutes(5), now);
+		entityManager.clear();
+
+		assertThat(claimed).isEqualTo(1);
+		assertThat(repository.findByLeasedByOrderById("me")).extracting(OutboxMessage::getId).containsExactly(free.getId());
+		assertThat(repository.findByLeasedByOrderById("other")).extracting(OutboxMessage::getId).containsExactly(leased.getId());
+	}
+
+	@Test
+	@DisplayName("Deve liberar as mensagens reservadas contando a tentativa")
+	public void releaseTest() {
+		LocalDateTime until = LocalDateTime.now().plusMinutes(5);
+		OutboxMessage message = entityManager.persist(createMessage("me", until, 0));
+		entityManager.flush();
+
+		int released = repository.release(Collections.singletonList(message.getId()), "other");
+		released += repository.release(Collections.singletonList(message.getId()), "me");
+		entityManager.clear();
+
+		OutboxMessage found = repository.findById(message.getId()).get();
+		assertThat(released).isEqualTo(1);
+		assertThat(found.getLeasedBy()).isNull();
+		assertThat(found.getAttempts()).isEqualTo(1);
+	}
+
+	@Test
+	@DisplayName("Deve remover apenas as mensagens enviadas que continuam reservadas pelo drenador")
+	public void acknowledgeTest() {
+		LocalDateTime until = LocalDateTime.now().plusMinutes(5);
+		OutboxMessage mine = entityManager.persist(createMessage("me", until, 0));
+		OutboxMessage reclaimed = entityManager.persist(createMessage("other", until, 0));
+		entityManager.flush();
+
+		int acknowledged = repository.acknowledge(Arrays.asList(mine.getId(), reclaimed.getId()), "me");
+		entityManager.clear();
+
+		assertThat(acknowledged).isEqualTo(1);
+		assertThat(repository.findById(mine.getId())).isEmpty();
+		assertThat(repository.findById(reclaimed.getId())).isPresent();
+	}
+
+	private OutboxMessage createMessage(String leasedBy, LocalDateTime leasedUntil, int attempts) {
+		return OutboxMessage.builder()
+				.recipient("customer@email.com")
+				.subject("Assunto")
+				.message("Mensagem")
+				.createdAt(LocalDateTime.now())
+				.attempts(attempts)
+				.leasedBy(leasedBy)
+				.leasedUntil(leasedUntil)
+				.build();
+	}
+
+}
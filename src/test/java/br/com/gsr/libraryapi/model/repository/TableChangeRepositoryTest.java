@@ -0,0 +1,53 @@
+package br.com.gsr.libraryapi.model.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import br.com.gsr.libraryapi.api.model.repository.TableChangeRepository;
+import br.com.gsr.libraryapi.service.EmailService;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+public class TableChangeRepositoryTest {
+
+	@Autowired
+	TableChangeRepository repository;
+
+	@MockBean
+	EmailService emailService;
+
+	@Test
+	@DisplayName("Deve incrementar apenas os contadores existentes")
+	public void incrementTest() {
+		repository.insert("book-0", "book", 0l);
+
+		assertThat(repository.increment("book-0")).isEqualTo(1);
+		assertThat(repository.increment("book-1")).isZero();
+		assertThat(repository.findById("book-0")).hasValueSatisfying(change -> assertThat(change.getChanges()).isEqualTo(1l));
+	}
+
+	@Test
+	@DisplayName("Deve somar os contadores das tabelas informadas")
+	public void sumChangesTest() {
+		repository.insert("book-0", "book", 2l);
+		repository.insert("book-1", "book", 3l);
+		repository.insert("loan-0", "loan", 5l);
+
+		assertThat(repository.sumChanges(Collections.singleton("book"))).isEqualTo(5l);
+		assertThat(repository.sumChanges(Arrays.asList("book", "loan"))).isEqualTo(10l);
+		assertThat(repository.sumChanges(Collections.singleton("author"))).isZero();
+	}
+
+}
@@ -0,0 +1,116 @@
+package br.com.gsr.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.api.model.repository.BookRepository;
+import br.com.gsr.libraryapi.api.model.repository.BookTombstoneRepository;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class BookIndexRefreshServiceTest {
+
+	BookIndexRefreshService service;
+
+	@MockBean
+	BookRepository repository;
+
+	@MockBean
+	BookTombstoneRepository tombstoneRepository;
+
+	@MockBean
+	TableChangeService tableChangeService;
+
+	@MockBean
+	BookSearchService searchService;
+
+	@MockBean
+	BookSuggestService suggestService;
+
+	@BeforeEach
+	public void setUp() {
+		service = new BookIndexRefreshService(repository, tombstoneRepository, tableChangeService, searchService, suggestService);
+		service.batchSize = 2;
+		service.overlap = Duration.ofMinutes(1);
+		service.tombstoneRetention = Duration.ofDays(1);
+	}
+
+	@Test
+	@DisplayName("Deve indexar todos os livros na primeira atualização, em blocos")
+	public void firstRefreshIndexesAllBooksTest() {
+		Book first = book(1l);
+		Book second = book(2l);
+		Book third = book(3l);
+		Mockito.when( tableChangeService.changes(TableChangeService.BOOKS) ).thenReturn(3l);
+		Mockito.when( repository.findAllAfter(0l, PageRequest.of(0, 2)) ).thenReturn(Arrays.asList(first, second));
+		Mockito.when( repository.findAllAfter(2l, PageRequest.of(0, 2)) ).thenReturn(Collections.singletonList(third));
+
+		service.refresh();
+
+		Mockito.verify(searchService).index(first);
+		Mockito.verify(searchService).index(second);
+		Mockito.verify(searchService).index(third);
+		Mockito.verify(suggestService).index(third);
+	}
+
+	@Test
+	@DisplayName("Deve reindexar apenas os livros alterados e remover os excluídos desde a última atualização")
+	public void refreshChangedAndDeletedBooksTest() {
+		Book second = book(2l);
+		Mockito.when( tableChangeService.changes(TableChangeService.BOOKS) ).thenReturn(2l, 4l);
+		Mockito.when( repository.findAllAfter(0l, PageRequest.of(0, 2)) ).thenReturn(Arrays.asList(book(1l), second));
+		Instant before = Instant.now();
+		service.refresh();
+		Mockito.clearInvocations(repository, searchService, suggestService);
+		Mockito.when( repository.findChangedAfter(Mockito.any(), Mockito.eq(0l), Mockito.eq(PageRequest.of(0, 2))) )
+			.thenReturn(Collections.singletonList(second));
+		Mockito.when( tombstoneRepository.findDeletedAfter(Mockito.any(), Mockito.eq(0l), Mockito.eq(PageRequest.of(0, 2))) )
+			.thenReturn(Collections.singletonList(1l));
+
+		service.refresh();
+
+		ArgumentCaptor<Instant> since = ArgumentCaptor.forClass(Instant.class);
+		Mockito.verify(repository).findChangedAfter(since.capture(), Mockito.eq(0l), Mockito.any());
+		assertThat(since.getValue()).isBetween(before.minus(service.overlap), Instant.now().minus(service.overlap));
+		Mockito.verify(repository, Mockito.never()).findAllAfter(Mockito.anyLong(), Mockito.any());
+		Mockito.verify(searchService).index(second);
+		Mockito.verify(suggestService).index(second);
+		Mockito.verify(searchService).remove(1l);
+		Mockito.verify(suggestService).remove(1l);
+		Mockito.verify(tombstoneRepository, Mockito.times(2)).deleteDeletedBefore(Mockito.any());
+	}
+
+	@Test
+	@DisplayName("Não deve ler os livros enquanto a tabela não for alterada")
+	public void refreshWithoutChangesTest() {
+		Mockito.when( tableChangeService.changes(TableChangeService.BOOKS) ).thenReturn(5l);
+
+		service.refresh();
+		service.refresh();
+
+		Mockito.verify(repository, Mockito.times(1)).findAllAfter(Mockito.anyLong(), Mockito.any());
+		Mockito.verify(repository, Mockito.never()).findChangedAfter(Mockito.any(), Mockito.anyLong(), Mockito.any());
+		Mockito.verify(tombstoneRepository, Mockito.never()).findDeletedAfter(Mockito.any(), Mockito.anyLong(), Mockito.any());
+	}
+
+	private static Book book(Long id) {
+		return Book.builder().id(id).title("As aventuras").author("Fulano").isbn("00" + id).build();
+	}
+
+}
@@ -0,0 +1,91 @@
+package br.com.gsr.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.service.impl.BookSearchServiceImpl;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class BookSearchServiceTest {
+
+	BookSearchService service;
+
+	@BeforeEach
+	public void setUp() {
+		this.service = new BookSearchServiceImpl();
+		service.index(book(1l, "Memórias Póstumas de Brás Cubas", "Machado de Assis", "978-85-359-0277-5"));
+		service.index(book(2l, "Dom Casmurro", "Machado de Assis", "978-85-7232-144-9"));
+		service.index(book(3l, "O Cortiço", "Aluísio Azevedo", "978-85-08-13320-9"));
+		service.index(book(4l, "Machado: uma biografia", "Fulano", "123"));
+	}
+
+	@Test
+	@DisplayName("Deve encontrar livros por palavras no meio do título ignorando acentos")
+	public void searchIgnoringAccentsTest() {
+		assertThat(ids(service.search("postumas bras", 10))).containsExactly(1l);
+		assertThat(ids(service.search("CORTIÇO", 10))).containsExactly(3l);
+	}
+
+	@Test
+	@DisplayName("Deve ordenar os livros pela relevância")
+	public void searchRankingTest() {
+		// title matches weigh more than author matches
+		assertThat(ids(service.search("machado", 10))).containsExactly(4l, 1l, 2l);
+		// books matching every term come first
+		assertThat(ids(service.search("machado casmurro", 10))).startsWith(2l);
+	}
+
+	@Test
+	@DisplayName("Deve completar a última palavra da busca como prefixo")
+	public void searchPrefixTest() {
+		assertThat(ids(service.search("dom casm", 10))).containsExactly(2l);
+		assertThat(ids(service.search("casm dom", 10))).containsExactly(2l);
+	}
+
+	@Test
+	@DisplayName("Deve encontrar um livro pelo isbn com ou sem hífens")
+	public void searchByIsbnTest() {
+		assertThat(ids(service.search("978-85-7232-144-9", 10))).containsExactly(2l);
+		assertThat(ids(service.search("9788572321449", 10))).containsExactly(2l);
+	}
+
+	@Test
+	@DisplayName("Deve limitar a quantidade de resultados")
+	public void searchLimitTest() {
+		assertThat(service.search("machado", 2)).hasSize(2);
+		assertThat(service.search("machado", 0)).isEmpty();
+		assertThat(service.search("de da", 10)).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Deve refletir atualizações e remoções no índice")
+	public void updateAndRemoveTest() {
+		service.index(book(2l, "Quincas Borba", "Machado de Assis", "978-85-7232-144-9"));
+		assertThat(service.search("casmurro", 10)).isEmpty();
+		assertThat(ids(service.search("quincas", 10))).containsExactly(2l);
+
+		service.remove(2l);
+		assertThat(service.search("quincas", 10)).isEmpty();
+		assertThat(ids(service.search("assis", 10))).containsExactly(1l);
+	}
+
+	private static Book book(Long id, String title, String author, String isbn) {
+		return Book.builder().id(id).title(title).author(author).isbn(isbn).build();
+	}
+
+	private static List<Long> ids(List<Book> books) {
+		return books.stream().map(Book::getId).collect(Collectors.toList());
+	}
+
+}
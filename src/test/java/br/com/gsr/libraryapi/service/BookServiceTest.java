@@ -2,26 +2,37 @@ package br.com.gsr.libraryapi.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.sql.SQLException;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 
 import org.assertj.core.api.Assertions;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.data.domain.Example;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import br.com.gsr.libraryapi.api.dto.BookDTO;
 import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.api.model.entity.Loan;
 import br.com.gsr.libraryapi.api.model.repository.BookRepository;
+import br.com.gsr.libraryapi.api.model.repository.BookTombstoneRepository;
 import br.com.gsr.libraryapi.exception.BusinessException;
 import br.com.gsr.libraryapi.service.impl.BookServiceImpl;
 
@@ -34,9 +45,21 @@ public class BookServiceTest {
 	@MockBean
 	BookRepository repository;
 	
+	@MockBean
+	BookTombstoneRepository tombstoneRepository;
+	
+	@MockBean
+	BookSearchService searchService;
+	
+	@MockBean
+	BookSuggestService suggestService;
+	
+	@MockBean
+	TableChangeService tableChangeService;
+	
 	@BeforeEach
 	public void setUp() {
-		this.service = new BookServiceImpl( repository );
+		this.service = new BookServiceImpl( repository, tombstoneRepository, searchService, suggestService, tableChangeService );
 	}
 	
 	@Test
@@ -44,8 +67,7 @@ public class BookServiceTest {
 	public void saveBookTest() {
 		//cenario
 		Book book = createValidBook();
-		Mockito.when( repository.existsByIsbn(Mockito.anyString())).thenReturn(false);
-		Mockito.when( repository.save(book) ).thenReturn(
+		Mockito.when( repository.saveAndFlush(book) ).thenReturn(
 				Book.builder()
 					.id(1l)
 					.isbn("123")
@@ -61,6 +83,8 @@ public class BookServiceTest {
 		assertThat(savedBook.getIsbn()).isEqualTo("123");
 		assertThat(savedBook.getTitle()).isEqualTo("As aventuras");
 		assertThat(savedBook.getAuthor()).isEqualTo("Fulano");
+		Mockito.verify(searchService).index(savedBook);
+		Mockito.verify(suggestService).index(savedBook);
 	
 	}
 	
@@ -69,14 +93,25 @@ public class BookServiceTest {
 	public void shouldNotSaveABookWithDuplicatedISBN() {
 		//cenario
 		Book book = this.createValidBook();
-		Mockito.when( repository.existsByIsbn(Mockito.anyString())).thenReturn(true);
+		Mockito.when( repository.saveAndFlush(book) ).thenThrow(isbnViolation());
 		
 		//execucao
 		Throwable exception = Assertions.catchThrowable(() -> service.save(book));
 		assertThat(exception)
 			.isInstanceOf(BusinessException.class)
 			.hasMessage("Isbn já cadastrado.");
-		Mockito.verify(repository, Mockito.never()).save(book);
+	}
+	
+	@Test
+	@DisplayName("Deve propagar violações de integridade que não sejam de isbn duplicado")
+	public void shouldPropagateOtherIntegrityViolations() {
+		Book book = this.createValidBook();
+		DataIntegrityViolationException violation = new DataIntegrityViolationException("other");
+		Mockito.when( repository.saveAndFlush(book) ).thenThrow(violation);
+		
+		Throwable exception = Assertions.catchThrowable(() -> service.save(book));
+		
+		assertThat(exception).isSameAs(violation);
 	}
 	
 	@Test
@@ -109,33 +144,80 @@ public class BookServiceTest {
 	}
 	
 	@Test
-	@DisplayName("Deve deletar um livro")
-	public void deleteBookTest() {
-		//cenario
-		Book book = Book.builder().id(1l).build();
+	@DisplayName("Deve deletar um livro pelo id como entidade lida do banco")
+	public void deleteBookByIdTest() {
+		Book book = createValidBook();
+		book.setId(1l);
+		Mockito.when( repository.findForWrite(1l) ).thenReturn(Optional.of(book));
 		
-		//execucao
-		org.junit.jupiter.api.Assertions.assertDoesNotThrow(() -> service.delete(book));
+		assertThat(service.deleteById(1l)).isTrue();
+		assertThat(service.deleteById(2l)).isFalse();
+		
+		Mockito.verify(repository).delete(book);
+		Mockito.verify(repository).flush();
+		Mockito.verify(tombstoneRepository).insert(Mockito.eq(1l), Mockito.any(Instant.class));
+		Mockito.verify(tombstoneRepository, Mockito.never()).insert(Mockito.eq(2l), Mockito.any());
+		Mockito.verify(repository, Mockito.never()).findById(Mockito.anyLong());
+		Mockito.verify(searchService).remove(1l);
+		Mockito.verify(searchService, Mockito.never()).remove(2l);
+		Mockito.verify(tableChangeService, Mockito.times(1)).changed(TableChangeService.BOOKS);
+	}
+	
+	@Test
+	@DisplayName("Deve atualizar título e autor do livro lido do banco")
+	public void updateTitleAndAuthorTest() {
+		Book book = createValidBook();
+		book.setId(1l);
+		Mockito.when( repository.findForWrite(1l) ).thenReturn(Optional.of(book));
 		
-		//verificacoes
-		Mockito.verify(repository, Mockito.times(1)).delete(book);
+		Optional<Book> updated = service.updateTitleAndAuthor(1l, "Outro título", "Outro autor");
+		Optional<Book> missing = service.updateTitleAndAuthor(2l, "Outro título", "Outro autor");
 		
+		assertThat(updated).containsSame(book);
+		assertThat(book.getTitle()).isEqualTo("Outro título");
+		assertThat(book.getAuthor()).isEqualTo("Outro autor");
+		assertThat(missing).isEmpty();
+		Mockito.verify(repository).flush();
+		Mockito.verify(repository, Mockito.never()).findById(Mockito.anyLong());
+		Mockito.verify(tableChangeService, Mockito.times(1)).changed(TableChangeService.BOOKS);
 	}
 	
 	@Test
-	@DisplayName("Deve lançar erro IllegalArgumentException ao tentar deletar um livro nulo")
-	public void deleteInexistentBookTest() {		
-		//cenario
-		Book book = new Book();
+	@DisplayName("Deve atualizar os índices apenas após o commit da exclusão e da edição")
+	public void updateIndexesAfterCommitTest() {
+		Book book = createValidBook();
+		book.setId(1l);
+		Mockito.when( repository.findForWrite(1l) ).thenReturn(Optional.of(book));
 		
-		//execucao
-		Throwable exception = Assertions.catchThrowable( () -> service.delete(book));
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			service.updateTitleAndAuthor(1l, "Outro título", "Outro autor");
+			service.deleteById(1l);
+			
+			Mockito.verifyNoInteractions(searchService, suggestService);
+			TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
 		
-		//verificacoes
-		Mockito.verify(repository, Mockito.never()).delete(book);;
-		assertThat(exception).isInstanceOf(IllegalArgumentException.class);
-		assertThat(exception).hasMessage("Book id cant be null.");
+		Mockito.verify(searchService).index(book);
+		Mockito.verify(suggestService).index(book);
+		Mockito.verify(searchService).remove(1l);
+		Mockito.verify(suggestService).remove(1l);
+	}
+	
+	@Test
+	@DisplayName("Deve lançar erro de negócio ao deletar pelo id um livro com empréstimos")
+	public void deleteBookByIdWithLoansTest() {
+		ConstraintViolationException cause = new ConstraintViolationException("referenced", new SQLException(), Loan.FK_BOOK);
+		Mockito.when( repository.findForWrite(1l) ).thenReturn(Optional.of(createValidBook()));
+		Mockito.doThrow(new DataIntegrityViolationException("referenced", cause)).when(repository).flush();
 		
+		Throwable exception = Assertions.catchThrowable( () -> service.deleteById(1l));
+		
+		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Livro possui empréstimos.");
+		Mockito.verify(searchService, Mockito.never()).remove(1l);
+		Mockito.verify(tableChangeService, Mockito.never()).changed(Mockito.anyString());
 	}
 	
 	@Test
@@ -145,7 +227,7 @@ public class BookServiceTest {
 		
 		Book updatedBook = createValidBook();
 		updatedBook.setId(1l);
-		Mockito.when( repository.save(updatingBook) ).thenReturn(updatedBook);
+		Mockito.when( repository.saveAndFlush(updatingBook) ).thenReturn(updatedBook);
 		
 		Book book = service.save(updatingBook);
 		assertThat(book.getId()).isEqualTo(updatedBook.getId());
@@ -157,38 +239,62 @@ public class BookServiceTest {
 	}
 	
 	@Test
-	@DisplayName("Deve retornar IllegalArgumentException ao tentar atualizar um livro nulo")
-	public void updateInexistentBookTest() {
-		Book book = new Book();
+	@DisplayName("Deve filtrar livros por cursor")
+	public void findBookAfterTest() {
+		Book filter = Book.builder().title("100%_certo").build();
+		List<Book> list = new ArrayList<>();
+		list.add(createValidBook());
+		Mockito.when( repository.findByFilterAfter(filter, 5l, 21) )
+			.thenReturn(list);
 		
-		Throwable exception = Assertions.catchThrowable( () -> service.update(book) );
+		List<Book> result = service.findAfter(filter, 5l, 21);
 		
-		Mockito.verify(repository, Mockito.never()).save(book);
-		assertThat(exception)
-			.isInstanceOf(IllegalArgumentException.class)
-			.hasMessage("Book id cant be null.");
+		assertThat(result).isEqualTo(list);
 	}
 	
 	@Test
-	@DisplayName("Deve filtrar livros pelas propriedades")
-	public void findBookTest() {
-		Book book = createValidBook();
+	@DisplayName("Deve filtrar livros como DTOs")
+	public void findBookDTOTest() {
+		Book filter = Book.builder().id(1l).author("Fulano_").build();
+		PageRequest pageRequest = PageRequest.of(0, 10);
+		Page<BookDTO> page = new PageImpl<>(Collections.singletonList(new BookDTO(1l, "As aventuras", "Fulano_", "123")), pageRequest, 1);
+		Mockito.when( repository.findDTOByFilter(filter, pageRequest) ).thenReturn(page);
 		
-		PageRequest pageRequest = PageRequest.of(0, 100);
+		Page<BookDTO> result = service.findDTO(filter, pageRequest);
 		
-		List<Book> list = new ArrayList<>();
-		list.add(book);
-		Page<Book> page = new PageImpl<Book>(list, pageRequest, 1);
+		assertThat(result).isSameAs(page);
+	}
+	
+	@Test
+	@DisplayName("Deve salvar em lote apenas os livros com isbn não cadastrado")
+	public void saveAllTest() {
+		Book registered = Book.builder().author("Fulano").isbn("123").title("As aventuras").build();
+		Book newBook = Book.builder().author("Fulano").isbn("456").title("As aventuras II").build();
+		Mockito.when( repository.findExistingIsbns(new HashSet<>(Arrays.asList("123", "456"))) )
+			.thenReturn(Collections.singleton("123"));
+		
+		List<Book> saved = service.saveAll(Arrays.asList(registered, newBook));
 		
-		Mockito.when( repository.findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class)))
-			.thenReturn(page);
+		assertThat(saved).containsExactly(newBook);
+		Mockito.verify(repository).saveAll(Collections.singletonList(newBook));
+		Mockito.verify(repository).flush();
+		Mockito.verify(searchService).index(newBook);
+		Mockito.verify(searchService, Mockito.never()).index(registered);
+	}
+	
+	@Test
+	@DisplayName("Deve lançar erro de negocio quando um isbn do lote for cadastrado concorrentemente")
+	public void saveAllConcurrentDuplicateTest() {
+		Book book = createValidBook();
+		Mockito.when( repository.findExistingIsbns(Collections.singleton("123")) ).thenReturn(Collections.emptySet());
+		Mockito.doThrow(isbnViolation()).when(repository).flush();
 		
-		Page<Book> result = service.find(book, pageRequest);
+		Throwable exception = Assertions.catchThrowable(() -> service.saveAll(Collections.singletonList(book)));
 		
-		assertThat(result.getTotalElements()).isEqualTo(1);
-		assertThat(result.getContent()).isEqualTo(list);
-		assertThat(result.getPageable().getPageNumber()).isEqualTo(0);
-		assertThat(result.getPageable().getPageSize()).isEqualTo(100);	
+		assertThat(exception)
+			.isInstanceOf(BusinessException.class)
+			.hasMessage("Isbn já cadastrado.");
+		Mockito.verify(searchService, Mockito.never()).index(book);
 	}
 	
 	@Test
@@ -198,7 +304,7 @@ public class BookServiceTest {
 		Book book = createValidBook();
 		book.setId(1l);
 		
-		Mockito.when( repository.findByIsbn(isbn) ).thenReturn(Optional.of(book));
+		Mockito.when( repository.findByNaturalId(isbn) ).thenReturn(Optional.of(book));
 		
 		Optional<Book> foundBook = service.getBookByIsbn(isbn);
 		
@@ -208,10 +314,15 @@ public class BookServiceTest {
 		assertThat(foundBook.get().getTitle()).isEqualTo(book.getTitle());
 		assertThat(foundBook.get().getIsbn()).isEqualTo(book.getIsbn());
 		
-		Mockito.verify(repository, Mockito.times(1)).findByIsbn(isbn);
+		Mockito.verify(repository, Mockito.times(1)).findByNaturalId(isbn);
 		
 	}
 	
+	private DataIntegrityViolationException isbnViolation() {
+		ConstraintViolationException cause = new ConstraintViolationException("duplicated", new SQLException(), Book.UK_ISBN);
+		return new DataIntegrityViolationException("duplicated", cause);
+	}
+	
 	private Book createValidBook() {
 		return Book.builder().author("Fulano").isbn("123").title("As aventuras").build();
 	}
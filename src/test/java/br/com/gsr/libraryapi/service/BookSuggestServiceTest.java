@@ -0,0 +1,80 @@
+package br.com.gsr.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.service.impl.BookSuggestServiceImpl;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class BookSuggestServiceTest {
+
+	BookSuggestService service;
+
+	@BeforeEach
+	public void setUp() {
+		this.service = new BookSuggestServiceImpl();
+		service.index(book(1l, "Memórias Póstumas de Brás Cubas", "Machado de Assis"));
+		service.index(book(2l, "Dom Casmurro", "Machado de Assis"));
+		service.index(book(3l, "O Cortiço", "Aluísio Azevedo"));
+		service.index(book(4l, "Machado: uma biografia", "Fulano"));
+	}
+
+	@Test
+	@DisplayName("Deve sugerir títulos e autores pelo prefixo, os mais frequentes primeiro")
+	public void suggestByPrefixTest() {
+		assertThat(service.suggest("mach", 10)).containsExactly("Machado de Assis", "Machado: uma biografia");
+		assertThat(service.suggest("MEMO", 10)).containsExactly("Memórias Póstumas de Brás Cubas");
+		assertThat(service.suggest("xyz", 10)).isEmpty();
+		assertThat(service.suggest("  ", 10)).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Deve sugerir pelo início de qualquer palavra ignorando acentos")
+	public void suggestByWordTest() {
+		assertThat(service.suggest("casm", 10)).containsExactly("Dom Casmurro");
+		assertThat(service.suggest("cortico", 10)).containsExactly("O Cortiço");
+		assertThat(service.suggest("postumas de bras", 10)).containsExactly("Memórias Póstumas de Brás Cubas");
+	}
+
+	@Test
+	@DisplayName("Deve sugerir prefixos mais longos que a profundidade da árvore")
+	public void suggestLongPrefixTest() {
+		assertThat(service.suggest("memorias postumas de b", 10)).containsExactly("Memórias Póstumas de Brás Cubas");
+		assertThat(service.suggest("memorias postumas de x", 10)).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Deve limitar a quantidade de sugestões")
+	public void suggestLimitTest() {
+		assertThat(service.suggest("m", 1)).containsExactly("Machado de Assis");
+		assertThat(service.suggest("m", 0)).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Deve refletir atualizações e remoções nas sugestões")
+	public void updateAndRemoveTest() {
+		service.index(book(4l, "Quincas Borba", "Machado de Assis"));
+		assertThat(service.suggest("mach", 10)).containsExactly("Machado de Assis");
+		assertThat(service.suggest("quin", 10)).containsExactly("Quincas Borba");
+
+		service.remove(1l);
+		service.remove(2l);
+		service.remove(4l);
+		assertThat(service.suggest("mach", 10)).isEmpty();
+		assertThat(service.suggest("m", 10)).isEmpty();
+	}
+
+	private static Book book(Long id, String title, String author) {
+		return Book.builder().id(id).title(title).author(author).isbn(String.valueOf(id)).build();
+	}
+
+}
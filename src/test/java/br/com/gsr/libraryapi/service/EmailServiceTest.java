@@ -0,0 +1,146 @@
+package br.com.gsr.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import br.com.gsr.libraryapi.config.MailDispatchProperties;
+import br.com.gsr.libraryapi.config.ThreadingProperties;
+import br.com.gsr.libraryapi.service.impl.EmailServiceImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class EmailServiceTest {
+
+	SmtpServerStub smtp;
+	MeterRegistry registry;
+	MailDispatchProperties properties;
+	EmailServiceImpl service;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		smtp = new SmtpServerStub();
+		registry = new SimpleMeterRegistry();
+		properties = new MailDispatchProperties();
+		properties.setWorkers(1);
+		properties.setBatchSize(10);
+		properties.setRatePerSecond(1000);
+		properties.setInitialBackoff(Duration.ofMillis(10));
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		if (service != null) {
+			service.stop();
+		}
+		smtp.close();
+	}
+
+	@Test
+	@DisplayName("Deve enviar uma mensagem por destinatário reutilizando a conexão")
+	public void sendMailsTest() throws Exception {
+		createService();
+
+		CompletableFuture<Void> result = service.sendMails("Aviso", "Atrasado", Arrays.asList("a@email.com", "b@email.com", "c@email.com"));
+		service.start();
+		result.get(5, TimeUnit.SECONDS);
+
+		assertThat(smtp.getRecipients()).containsExactlyInAnyOrder("a@email.com", "b@email.com", "c@email.com");
+		assertThat(smtp.getSubjects()).containsOnly("Aviso");
+		assertThat(smtp.getConnections()).isEqualTo(1);
+		assertThat(registry.counter("mail.dispatch.sent").count()).isEqualTo(3);
+		assertThat(registry.get("mail.dispatch.queue").gauge().value()).isZero();
+	}
+
+	@Test
+	@DisplayName("Deve tentar novamente as mensagens recusadas até esgotar as tentativas")
+	public void retryTest() throws Exception {
+		smtp.refuse("b@email.com");
+		createService();
+		service.start();
+
+		CompletableFuture<Void> sent = service.sendMails("Aviso", "Atrasado", Collections.singletonList("a@email.com"));
+		CompletableFuture<Void> refused = service.sendMails("Aviso", "Atrasado", Collections.singletonList("b@email.com"));
+		sent.get(5, TimeUnit.SECONDS);
+		Throwable exception = catchThrowable(() -> refused.get(5, TimeUnit.SECONDS));
+
+		assertThat(exception).isInstanceOf(ExecutionException.class);
+		assertThat(smtp.getRecipients()).containsExactly("a@email.com");
+		assertThat(registry.counter("mail.dispatch.retried").count()).isEqualTo(2);
+		assertThat(registry.counter("mail.dispatch.failed").count()).isEqualTo(1);
+	}
+
+	@Test
+	@DisplayName("Deve tentar uma única vez a mensagem avulsa, deixando as novas tentativas para quem chamou")
+	public void sendMailOnceTest() throws Exception {
+		smtp.refuse("b@email.com");
+		createService();
+		service.start();
+
+		CompletableFuture<Void> refused = service.sendMail("Aviso", "Atrasado", "b@email.com");
+		Throwable exception = catchThrowable(() -> refused.get(5, TimeUnit.SECONDS));
+
+		assertThat(exception).isInstanceOf(ExecutionException.class);
+		assertThat(registry.counter("mail.dispatch.retried").count()).isZero();
+		assertThat(registry.counter("mail.dispatch.failed").count()).isEqualTo(1);
+	}
+
+	@Test
+	@DisplayName("Deve recusar mensagens quando a fila estiver cheia")
+	public void fullQueueTest() throws Exception {
+		properties.setQueueCapacity(1);
+		createService();
+
+		CompletableFuture<Void> result = service.sendMails("Aviso", "Atrasado", Arrays.asList("a@email.com", "b@email.com"));
+		service.start();
+		Throwable exception = catchThrowable(() -> result.get(5, TimeUnit.SECONDS));
+
+		assertThat(exception).hasCauseInstanceOf(RejectedExecutionException.class);
+		assertThat(smtp.getRecipients()).containsExactly("a@email.com");
+		assertThat(registry.counter("mail.dispatch.rejected").count()).isEqualTo(1);
+	}
+
+	@Test
+	@DisplayName("Deve limitar a quantidade de mensagens enviadas por segundo")
+	public void rateLimitTest() throws Exception {
+		properties.setRatePerSecond(20);
+		properties.setBurst(1);
+		properties.setBatchSize(1);
+		createService();
+		service.start();
+
+		long start = System.nanoTime();
+		service.sendMails("Aviso", "Atrasado", Arrays.asList("a@email.com", "b@email.com", "c@email.com", "d@email.com"))
+			.get(5, TimeUnit.SECONDS);
+
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(140);
+	}
+
+	private void createService() {
+		JavaMailSenderImpl sender = new JavaMailSenderImpl();
+		sender.setHost("localhost");
+		sender.setPort(smtp.getPort());
+		service = new EmailServiceImpl(sender, properties, new ThreadingProperties(), registry);
+		ReflectionTestUtils.setField(service, "remetent", "mail@library-api.com");
+	}
+
+}
@@ -3,23 +3,32 @@ package br.com.gsr.libraryapi.service;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
 
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import br.com.gsr.libraryapi.api.dto.LoanDTO;
 import br.com.gsr.libraryapi.api.dto.LoanFilterDTO;
 import br.com.gsr.libraryapi.api.model.entity.Book;
 import br.com.gsr.libraryapi.api.model.entity.Loan;
@@ -34,11 +43,17 @@ public class LoanServiceTest {
 	@MockBean
 	private LoanRepository repository;
 	
+	@MockBean
+	private OutboxService outboxService;
+	
+	@MockBean
+	private TableChangeService tableChangeService;
+	
 	private LoanService service;
 	
 	@BeforeEach
 	public void setUp() {
-		this.service = new LoanServiceImpl(repository);
+		this.service = new LoanServiceImpl(repository, outboxService, tableChangeService);
 	}
 
 	@Test
@@ -56,11 +71,11 @@ public class LoanServiceTest {
 				.id(1l)
 				.book(book)
 				.customer("Fulano")
+				.customerEmail("customer@email.com")
 				.loanDate(LocalDate.now())
 				.build();
 	
-		Mockito.when(repository.existsByBookAndNotReturned(Mockito.any(Book.class))).thenReturn(false);
-		Mockito.when(repository.save(savingLoan)).thenReturn(savedLoan);
+		Mockito.when(repository.saveAndFlush(savingLoan)).thenReturn(savedLoan);
 		
 		Loan loan = service.save(savingLoan);
 		
@@ -68,19 +83,33 @@ public class LoanServiceTest {
 		assertThat(loan.getBook().getId()).isEqualTo(savedLoan.getBook().getId());
 		assertThat(loan.getCustomer()).isEqualTo(savedLoan.getCustomer());
 		assertThat(loan.getLoanDate()).isEqualTo(savedLoan.getLoanDate());
+		Mockito.verify(outboxService).enqueue(Mockito.eq("Empréstimo registrado"), Mockito.anyString(),
+				Mockito.eq(Collections.singletonList("customer@email.com")));
+	}
+	
+	@Test
+	@DisplayName("Deve lançar erro de negócio ao salvar um emprestimo de livro excluído")
+	public void deletedBookSaveTest() {
+		Loan savingLoan = Loan.builder().book(Book.builder().id(1l).isbn("123").build()).build();
+		ConstraintViolationException cause = new ConstraintViolationException("missing", new SQLException(), Loan.FK_BOOK);
+		Mockito.when(repository.saveAndFlush(savingLoan)).thenThrow(new DataIntegrityViolationException("missing", cause));
 		
+		Throwable exception = catchThrowable(() -> service.save(savingLoan));
+		
+		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book not found for informed isbn");
+		Mockito.verifyNoInteractions(outboxService);
 	}
 	
 	@Test
 	@DisplayName("Deve lançar erro de negócio ao salvar um emprestimo com livro ja emprestado")
 	public void loanedBookSaveTest() {
 		Loan savingLoan = Loan.builder().book(Book.builder().isbn("123").build()).build();
-		Mockito.when(repository.existsByBookAndNotReturned(Mockito.any(Book.class))).thenReturn(true);
+		Mockito.when(repository.saveAndFlush(savingLoan)).thenThrow(activeBookViolation());
 		
 		Throwable exception = catchThrowable(() -> service.save(savingLoan));
 		
 		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned.");
-		Mockito.verify(repository, Mockito.never()).save(savingLoan);
+		Mockito.verifyNoInteractions(outboxService);
 	}
 	
 	@Test
@@ -106,22 +135,69 @@ public class LoanServiceTest {
 	}
 	
 	@Test
-	@DisplayName("Deve atualizar um empréstimo")
-	public void updateBookTest() {
-		Long id = 1l;
-		Loan loan = Loan.builder()
-				.book(Book.builder().id(id).build())
-				.customer("Fulano")
-				.id(id)
-				.loanDate(LocalDate.now())
-				.returned(true)
-				.build();
-		Mockito.when( repository.save(loan) ).thenReturn(loan);
+	@DisplayName("Deve salvar em lote apenas os empréstimos de livros disponíveis")
+	public void saveAllTest() {
+		Loan available = Loan.builder().book(Book.builder().id(1l).build()).customer("Fulano").loanDate(LocalDate.now()).build();
+		Loan loaned = Loan.builder().book(Book.builder().id(2l).build()).customer("Ciclano").loanDate(LocalDate.now()).build();
+		Mockito.when( repository.findActiveBookIds(new HashSet<>(Arrays.asList(1l, 2l))) ).thenReturn(Collections.singleton(2l));
 		
-		Loan updatedLoan = service.update(loan);
+		List<Loan> saved = service.saveAll(Arrays.asList(available, loaned));
 		
-		assertThat(updatedLoan.getReturned()).isTrue();
-		Mockito.verify(repository).save(loan);
+		assertThat(saved).containsExactly(available);
+		Mockito.verify(repository).saveAll(Collections.singletonList(available));
+		Mockito.verify(repository).flush();
+	}
+	
+	@Test
+	@DisplayName("Deve lançar erro de negócio quando um livro do lote for emprestado concorrentemente")
+	public void saveAllConcurrentLoanTest() {
+		Loan loan = Loan.builder().book(Book.builder().id(1l).build()).customer("Fulano").loanDate(LocalDate.now()).build();
+		Mockito.when( repository.findActiveBookIds(Collections.singleton(1l)) ).thenReturn(Collections.emptySet());
+		Mockito.doThrow(activeBookViolation()).when(repository).flush();
+		
+		Throwable exception = catchThrowable(() -> service.saveAll(Collections.singletonList(loan)));
+		
+		assertThat(exception)
+			.isInstanceOf(BusinessException.class)
+			.hasMessage("Book already loaned.");
+	}
+	
+	@Test
+	@DisplayName("Deve marcar em lote os empréstimos encontrados como devolvidos")
+	public void updateReturnedTest() {
+		Loan loan = Loan.builder().id(1l).book(Book.builder().id(1l).build()).customer("Fulano").build();
+		Mockito.when( repository.findAllByIdWithBook(new HashSet<>(Arrays.asList(1l, 2l))) )
+			.thenReturn(Collections.singletonList(loan));
+		Map<Long, Boolean> returnedById = new HashMap<>();
+		returnedById.put(1l, true);
+		returnedById.put(2l, true);
+		
+		List<Loan> updated = service.updateReturned(returnedById);
+		
+		assertThat(updated).containsExactly(loan);
+		assertThat(loan.getReturned()).isTrue();
+		Mockito.verify(repository).flush();
+	}
+	
+	@Test
+	@DisplayName("Deve devolver um empréstimo pelo id sem carregá-lo")
+	public void updateReturnedByIdTest() {
+		Mockito.when( repository.markReturned(1l) ).thenReturn(1);
+		
+		assertThat(service.updateReturned(1l, true)).isTrue();
+		assertThat(service.updateReturned(2l, true)).isFalse();
+		Mockito.verify(repository, Mockito.never()).findById(Mockito.anyLong());
+		Mockito.verify(tableChangeService, Mockito.times(1)).changed(TableChangeService.LOANS);
+	}
+	
+	@Test
+	@DisplayName("Deve lançar erro de negócio ao reabrir um empréstimo de livro já emprestado")
+	public void updateReturnedByIdLoanedBookTest() {
+		Mockito.when( repository.markNotReturned(1l, false) ).thenThrow(activeBookViolation());
+		
+		Throwable exception = catchThrowable(() -> service.updateReturned(1l, false));
+		
+		assertThat(exception).isInstanceOf(BusinessException.class).hasMessage("Book already loaned.");
 	}
 	
 	@Test
@@ -131,33 +207,30 @@ public class LoanServiceTest {
 		LoanFilterDTO loanFilterDTO = LoanFilterDTO.builder().customer("Fulano").isbn("321").build();
 		
 		Long id = 1l;
-		Loan loan = Loan.builder()
-				.book(Book.builder().id(id).isbn("321").build())
-				.customer("Fulano")
-				.id(id)
-				.loanDate(LocalDate.now())
-				.build();
+		LoanDTO loan = new LoanDTO(id, "Fulano", null, id, "As aventuras", "Artur", "321");
 
 		PageRequest pageRequest = PageRequest.of(0, 100);
 		
-		List<Loan> list = new ArrayList<>();
+		List<LoanDTO> list = new ArrayList<>();
 		list.add(loan);
-		Page<Loan> page = new PageImpl<>(list, pageRequest, list.size());
+		Page<LoanDTO> page = new PageImpl<>(list, pageRequest, list.size());
 		
-		Mockito.when( repository.findByBookIsbnOrCustomer(
-				Mockito.anyString(), 
-				Mockito.anyString(), 
-				Mockito.any(PageRequest.class)))
+		Mockito.when( repository.findDTOByFilter(loanFilterDTO, pageRequest))
 			.thenReturn(page);
 		
 		//execução
-		Page<Loan> result = service.find(loanFilterDTO, pageRequest);
+		Page<LoanDTO> result = service.findDTO(loanFilterDTO, pageRequest);
 		
 		
 		
 		
 		
 		
+	}
+	
+	private DataIntegrityViolationException activeBookViolation() {
+		ConstraintViolationException cause = new ConstraintViolationException("duplicated", new SQLException(), Loan.UK_ACTIVE_BOOK);
+		return new DataIntegrityViolationException("duplicated", cause);
 	}
 	
 }
@@ -0,0 +1,69 @@
+package br.com.gsr.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import br.com.gsr.libraryapi.api.model.entity.OutboxMessage;
+import br.com.gsr.libraryapi.config.OutboxProperties;
+import br.com.gsr.libraryapi.config.ThreadingProperties;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class OutboxDrainerTest {
+
+	OutboxDrainer drainer;
+
+	@MockBean
+	OutboxService outboxService;
+
+	@MockBean
+	EmailService emailService;
+
+	@BeforeEach
+	public void setUp() {
+		drainer = new OutboxDrainer(outboxService, emailService, new OutboxProperties(), new ThreadingProperties());
+	}
+
+	@Test
+	@DisplayName("Deve remover as mensagens enviadas e liberar as que falharam")
+	public void drainOnceTest() {
+		OutboxMessage sent = OutboxMessage.builder().id(1l).recipient("a@email.com").subject("Assunto").message("Mensagem").build();
+		OutboxMessage failed = OutboxMessage.builder().id(2l).recipient("b@email.com").subject("Assunto").message("Mensagem").build();
+		Mockito.when( outboxService.claim(Mockito.anyString(), Mockito.eq(100)) ).thenReturn(Arrays.asList(sent, failed));
+		Mockito.when( emailService.sendMail("Assunto", "Mensagem", "a@email.com") ).thenReturn(CompletableFuture.completedFuture(null));
+		CompletableFuture<Void> failure = new CompletableFuture<>();
+		failure.completeExceptionally(new IllegalStateException("smtp down"));
+		Mockito.when( emailService.sendMail("Assunto", "Mensagem", "b@email.com") ).thenReturn(failure);
+
+		int drained = drainer.drainOnce();
+
+		assertThat(drained).isEqualTo(2);
+		ArgumentCaptor<String> owner = ArgumentCaptor.forClass(String.class);
+		Mockito.verify(outboxService).claim(owner.capture(), Mockito.eq(100));
+		Mockito.verify(outboxService).acknowledge(owner.getValue(), Collections.singletonList(1l));
+		Mockito.verify(outboxService).release(owner.getValue(), Collections.singletonList(2l));
+	}
+
+	@Test
+	@DisplayName("Não deve enviar nada quando não houver mensagens livres")
+	public void drainEmptyOutboxTest() {
+		Mockito.when( outboxService.claim(Mockito.anyString(), Mockito.anyInt()) ).thenReturn(Collections.emptyList());
+
+		assertThat(drainer.drainOnce()).isZero();
+		Mockito.verifyNoInteractions(emailService);
+	}
+
+}
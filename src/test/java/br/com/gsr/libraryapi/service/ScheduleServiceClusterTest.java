@@ -0,0 +1,143 @@
+package br.com.gsr.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import br.com.gsr.libraryapi.LibraryApiApplication;
+import br.com.gsr.libraryapi.api.model.entity.Book;
+import br.com.gsr.libraryapi.api.model.entity.JobCheckpoint;
+import br.com.gsr.libraryapi.api.model.entity.Loan;
+import br.com.gsr.libraryapi.api.model.entity.OutboxMessage;
+import br.com.gsr.libraryapi.api.model.repository.BookRepository;
+import br.com.gsr.libraryapi.api.model.repository.JobCheckpointRepository;
+import br.com.gsr.libraryapi.api.model.repository.LoanRepository;
+import br.com.gsr.libraryapi.api.model.repository.OutboxRepository;
+
+/**
+ * Two application contexts sharing one in-memory database, standing in for two nodes.
+ */
+public class ScheduleServiceClusterTest {
+
+	private static final int LATE_LOANS = 20;
+
+	static ConfigurableApplicationContext nodeA;
+	static ConfigurableApplicationContext nodeB;
+
+	@BeforeAll
+	public static void startNodes() {
+		String url = "jdbc:h2:mem:cluster-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+		nodeA = startNode(url, "node-a");
+		nodeB = startNode(url, "node-b");
+	}
+
+	@AfterAll
+	public static void stopNodes() {
+		nodeB.close();
+		nodeA.close();
+	}
+
+	@Test
+	@DisplayName("Deve permitir que apenas um nó tenha o lock de um job")
+	public void jobLockTest() {
+		JobLockService lockA = nodeA.getBean(JobLockService.class);
+		JobLockService lockB = nodeB.getBean(JobLockService.class);
+
+		assertThat(lockA.tryLock("test-job", Duration.ofMinutes(1))).isTrue();
+		assertThat(lockB.tryLock("test-job", Duration.ofMinutes(1))).isFalse();
+		assertThat(lockA.tryLock("test-job", Duration.ofMinutes(1))).isTrue();
+
+		lockA.unlock("test-job");
+		assertThat(lockB.tryLock("test-job", Duration.ofMinutes(1))).isTrue();
+		assertThat(lockA.tryLock("test-job", Duration.ofMinutes(1))).isFalse();
+	}
+
+	@Test
+	@DisplayName("Não deve sobrescrever o progresso salvo por outro nó")
+	public void staleCheckpointTest() {
+		JobCheckpointRepository checkpointsA = nodeA.getBean(JobCheckpointRepository.class);
+		JobCheckpointRepository checkpointsB = nodeB.getBean(JobCheckpointRepository.class);
+		checkpointsA.save(JobCheckpoint.builder().name("test-checkpoint").runDate(LocalDate.now()).lastId(0L).build());
+		JobCheckpoint stale = checkpointsB.findById("test-checkpoint").get();
+		JobCheckpoint current = checkpointsA.findById("test-checkpoint").get();
+		current.setLastId(10L);
+		checkpointsA.save(current);
+
+		stale.setLastId(5L);
+		Throwable exception = catchThrowable(() -> checkpointsB.save(stale));
+
+		assertThat(exception).isInstanceOf(OptimisticLockingFailureException.class);
+		assertThat(checkpointsB.findById("test-checkpoint").get().getLastId()).isEqualTo(10L);
+		checkpointsA.deleteById("test-checkpoint");
+	}
+
+	@Test
+	@DisplayName("Deve dividir o job entre os nós sem repetir empréstimos")
+	public void shardedLateLoansTest() throws Exception {
+		BookRepository books = nodeA.getBean(BookRepository.class);
+		LoanRepository loans = nodeA.getBean(LoanRepository.class);
+		List<Loan> late = new ArrayList<>();
+		for (int i = 0; i < LATE_LOANS; i++) {
+			Book book = books.save(Book.builder().isbn("cluster-" + i).title("Livro " + i).author("Autor").build());
+			late.add(Loan.builder().book(book).customer("Cliente " + i).customerEmail("cliente" + i + "@email.com")
+					.loanDate(LocalDate.now().minusDays(10)).build());
+		}
+		loans.saveAll(late);
+
+		CountDownLatch start = new CountDownLatch(1);
+		CompletableFuture<Void> runA = CompletableFuture.runAsync(() -> run(nodeA, start));
+		CompletableFuture<Void> runB = CompletableFuture.runAsync(() -> run(nodeB, start));
+		start.countDown();
+		CompletableFuture.allOf(runA, runB).get();
+
+		List<String> recipients = nodeB.getBean(OutboxRepository.class).findAll().stream()
+				.filter(message -> ScheduleService.LATE_LOANS_SUBJECT.equals(message.getSubject()))
+				.map(OutboxMessage::getRecipient)
+				.collect(Collectors.toList());
+		assertThat(recipients).hasSize(LATE_LOANS).doesNotHaveDuplicates();
+		assertThat(nodeB.getBean(JobCheckpointRepository.class).findAll())
+			.hasSize(4)
+			.allMatch(JobCheckpoint::isCompleted);
+	}
+
+	private static void run(ConfigurableApplicationContext node, CountDownLatch start) {
+		try {
+			start.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		node.getBean(ScheduleService.class).sendMailToLateLoans();
+	}
+
+	private static ConfigurableApplicationContext startNode(String url, String nodeId) {
+		// arguments, since builder properties would lose to application.properties
+		return new SpringApplicationBuilder(LibraryApiApplication.class)
+				.run("--spring.datasource.url=" + url,
+						"--spring.jpa.hibernate.ddl-auto=update",
+						"--server.port=0",
+						"--spring.main.banner-mode=off",
+						"--spring.boot.admin.client.enabled=false",
+						"--application.scheduling.node-id=" + nodeId,
+						"--application.lateloans.shards=4",
+						"--application.lateloans.chunk-size=3",
+						"--application.outbox.drainers=0");
+	}
+
+}
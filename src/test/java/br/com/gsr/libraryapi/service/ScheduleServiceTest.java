@@ -0,0 +1,195 @@
+package br.com.gsr.libraryapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import br.com.gsr.libraryapi.api.model.entity.JobCheckpoint;
+import br.com.gsr.libraryapi.api.model.repository.JobCheckpointRepository;
+import br.com.gsr.libraryapi.api.model.repository.LateLoan;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class ScheduleServiceTest {
+
+	ScheduleService service;
+
+	@MockBean
+	LoanService loanService;
+
+	@MockBean
+	OutboxService outboxService;
+
+	@MockBean
+	JobCheckpointRepository checkpointRepository;
+
+	@MockBean
+	JobLockService jobLockService;
+
+	@BeforeEach
+	public void setUp() {
+		PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+		Mockito.when( transactionManager.getTransaction(Mockito.any()) ).thenReturn(new SimpleTransactionStatus());
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		service = new ScheduleService(loanService, outboxService, checkpointRepository, transactionTemplate, jobLockService);
+		service.mensagem = "Atrasado";
+		service.chunkSize = 2;
+		service.shards = 1;
+		service.lockLease = Duration.ofMinutes(10);
+		Mockito.when( jobLockService.tryLock(Mockito.anyString(), Mockito.any(Duration.class)) ).thenReturn(true);
+		Mockito.when( checkpointRepository.save(Mockito.any(JobCheckpoint.class)) ).then(invocation -> invocation.getArgument(0));
+	}
+
+	@Test
+	@DisplayName("Deve enfileirar os emails dos empréstimos atrasados em blocos, salvando o progresso")
+	public void sendMailToLateLoansInChunksTest() {
+		LocalDate today = LocalDate.now();
+		Mockito.when( checkpointRepository.findById(ScheduleService.LATE_LOANS_JOB) ).thenReturn(Optional.empty());
+		Mockito.when( loanService.getLateLoansAfter(today, 1, 0, 0l, 2) )
+			.thenReturn(Arrays.asList(lateLoan(1l, "a@email.com"), lateLoan(3l, null)));
+		Mockito.when( loanService.getLateLoansAfter(today, 1, 0, 3l, 2) )
+			.thenReturn(Collections.singletonList(lateLoan(4l, "b@email.com")));
+
+		service.sendMailToLateLoans();
+
+		Mockito.verify(outboxService).enqueue(ScheduleService.LATE_LOANS_SUBJECT, "Atrasado", Collections.singletonList("a@email.com"));
+		Mockito.verify(outboxService).enqueue(ScheduleService.LATE_LOANS_SUBJECT, "Atrasado", Collections.singletonList("b@email.com"));
+		ArgumentCaptor<JobCheckpoint> saved = ArgumentCaptor.forClass(JobCheckpoint.class);
+		Mockito.verify(checkpointRepository, Mockito.times(2)).save(saved.capture());
+		assertThat(saved.getValue().getLastId()).isEqualTo(4l);
+		assertThat(saved.getValue().isCompleted()).isTrue();
+	}
+
+	@Test
+	@DisplayName("Deve retomar uma execução interrompida após o último empréstimo processado")
+	public void resumeInterruptedRunTest() {
+		LocalDate today = LocalDate.now();
+		Mockito.when( checkpointRepository.findById(ScheduleService.LATE_LOANS_JOB) )
+			.thenReturn(Optional.of(checkpoint(ScheduleService.LATE_LOANS_JOB, today, 3l, false)));
+		Mockito.when( loanService.getLateLoansAfter(today, 1, 0, 3l, 2) )
+			.thenReturn(Collections.singletonList(lateLoan(4l, "b@email.com")));
+
+		service.resumeLateLoansMail();
+
+		Mockito.verify(loanService, Mockito.never()).getLateLoansAfter(today, 1, 0, 0l, 2);
+		Mockito.verify(outboxService).enqueue(ScheduleService.LATE_LOANS_SUBJECT, "Atrasado", Collections.singletonList("b@email.com"));
+	}
+
+	@Test
+	@DisplayName("Não deve repetir uma execução já concluída no mesmo dia")
+	public void completedRunTest() {
+		Mockito.when( checkpointRepository.findById(ScheduleService.LATE_LOANS_JOB) )
+			.thenReturn(Optional.of(checkpoint(ScheduleService.LATE_LOANS_JOB, LocalDate.now(), 4l, true)));
+
+		service.sendMailToLateLoans();
+		service.resumeLateLoansMail();
+
+		Mockito.verifyNoInteractions(loanService, outboxService);
+	}
+
+	@Test
+	@DisplayName("Deve começar do início quando o progresso salvo for de outro dia")
+	public void newDayRunTest() {
+		LocalDate today = LocalDate.now();
+		Mockito.when( checkpointRepository.findById(ScheduleService.LATE_LOANS_JOB) )
+			.thenReturn(Optional.of(checkpoint(ScheduleService.LATE_LOANS_JOB, today.minusDays(1), 3l, false)));
+		Mockito.when( loanService.getLateLoansAfter(today, 1, 0, 0l, 2) ).thenReturn(Collections.emptyList());
+
+		service.sendMailToLateLoans();
+
+		Mockito.verify(loanService).getLateLoansAfter(today, 1, 0, 0l, 2);
+		Mockito.verifyNoInteractions(outboxService);
+	}
+
+	@Test
+	@DisplayName("Não deve executar o job quando outro nó tiver o lock")
+	public void lockedByAnotherNodeTest() {
+		Mockito.when( checkpointRepository.findById(ScheduleService.LATE_LOANS_JOB) ).thenReturn(Optional.empty());
+		Mockito.when( jobLockService.tryLock(Mockito.eq(ScheduleService.LATE_LOANS_JOB), Mockito.any(Duration.class)) ).thenReturn(false);
+
+		service.sendMailToLateLoans();
+
+		Mockito.verifyNoInteractions(loanService, outboxService);
+		Mockito.verify(jobLockService, Mockito.never()).unlock(Mockito.anyString());
+	}
+
+	@Test
+	@DisplayName("Deve processar cada shard com o seu próprio lock e progresso")
+	public void shardedRunTest() {
+		LocalDate today = LocalDate.now();
+		service.shards = 2;
+		Mockito.when( checkpointRepository.findById(Mockito.anyString()) ).thenReturn(Optional.empty());
+		Mockito.when( loanService.getLateLoansAfter(Mockito.eq(today), Mockito.eq(2), Mockito.anyInt(), Mockito.eq(0l), Mockito.eq(2)) )
+			.thenReturn(Collections.emptyList());
+
+		service.sendMailToLateLoans();
+
+		Mockito.verify(loanService).getLateLoansAfter(today, 2, 0, 0l, 2);
+		Mockito.verify(loanService).getLateLoansAfter(today, 2, 1, 0l, 2);
+		Mockito.verify(jobLockService).unlock(ScheduleService.LATE_LOANS_JOB + "-0-of-2");
+		Mockito.verify(jobLockService).unlock(ScheduleService.LATE_LOANS_JOB + "-1-of-2");
+		ArgumentCaptor<JobCheckpoint> saved = ArgumentCaptor.forClass(JobCheckpoint.class);
+		Mockito.verify(checkpointRepository, Mockito.times(2)).save(saved.capture());
+		assertThat(saved.getAllValues()).extracting(JobCheckpoint::getName)
+			.containsExactlyInAnyOrder(ScheduleService.LATE_LOANS_JOB + "-0-of-2", ScheduleService.LATE_LOANS_JOB + "-1-of-2");
+	}
+
+	@Test
+	@DisplayName("Deve parar sem salvar o progresso quando o lock expirar durante a execução")
+	public void lostLockTest() {
+		LocalDate today = LocalDate.now();
+		Mockito.when( checkpointRepository.findById(ScheduleService.LATE_LOANS_JOB) ).thenReturn(Optional.empty());
+		Mockito.when( jobLockService.tryLock(Mockito.eq(ScheduleService.LATE_LOANS_JOB), Mockito.any(Duration.class)) )
+			.thenReturn(true, true, false);
+		Mockito.when( loanService.getLateLoansAfter(today, 1, 0, 0l, 2) )
+			.thenReturn(Arrays.asList(lateLoan(1l, "a@email.com"), lateLoan(3l, "c@email.com")));
+
+		service.sendMailToLateLoans();
+
+		Mockito.verify(loanService, Mockito.never()).getLateLoansAfter(today, 1, 0, 3l, 2);
+		Mockito.verify(outboxService, Mockito.times(1)).enqueue(Mockito.anyString(), Mockito.anyString(), Mockito.anyCollection());
+		Mockito.verify(checkpointRepository, Mockito.times(1)).save(Mockito.any(JobCheckpoint.class));
+	}
+
+	private static JobCheckpoint checkpoint(String name, LocalDate runDate, Long lastId, boolean completed) {
+		return JobCheckpoint.builder().name(name).runDate(runDate).lastId(lastId).completed(completed).build();
+	}
+
+	private static LateLoan lateLoan(Long id, String email) {
+		return new LateLoan() {
+			@Override
+			public Long getId() {
+				return id;
+			}
+
+			@Override
+			public String getCustomerEmail() {
+				return email;
+			}
+
+			@Override
+			public LocalDate getLoanDate() {
+				return LocalDate.now().minusDays(5);
+			}
+		};
+	}
+
+}
@@ -0,0 +1,121 @@
+package br.com.gsr.libraryapi.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Just enough of an SMTP server to receive mail in tests: it accepts every command,
+ * records the recipient and subject of each message and how many connections were opened, and
+ * refuses the recipients it is told to.
+ */
+class SmtpServerStub implements AutoCloseable {
+
+	private final ServerSocket server;
+	private final List<String> recipients = new CopyOnWriteArrayList<>();
+	private final List<String> subjects = new CopyOnWriteArrayList<>();
+	private final Set<String> refused = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger connections = new AtomicInteger();
+
+	SmtpServerStub() throws IOException {
+		server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread(this::accept, "smtp-stub");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	int getPort() {
+		return server.getLocalPort();
+	}
+
+	List<String> getRecipients() {
+		return recipients;
+	}
+
+	List<String> getSubjects() {
+		return subjects;
+	}
+
+	int getConnections() {
+		return connections.get();
+	}
+
+	void refuse(String recipient) {
+		refused.add(recipient);
+	}
+
+	void accept(String recipient) {
+		refused.remove(recipient);
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.close();
+	}
+
+	private void accept() {
+		while (!server.isClosed()) {
+			try {
+				Socket socket = server.accept();
+				connections.incrementAndGet();
+				Thread session = new Thread(() -> session(socket), "smtp-stub-session");
+				session.setDaemon(true);
+				session.start();
+			} catch (IOException e) {
+				return;
+			}
+		}
+	}
+
+	private void session(Socket socket) {
+		try (Socket s = socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+				Writer out = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII)) {
+			reply(out, "220 localhost");
+			String recipient = null;
+			String line;
+			while ((line = in.readLine()) != null) {
+				String command = line.toUpperCase();
+				if (command.startsWith("RCPT TO:")) {
+					recipient = line.substring(line.indexOf('<') + 1, line.indexOf('>'));
+					reply(out, refused.contains(recipient) ? "550 mailbox unavailable" : "250 OK");
+				} else if (command.equals("DATA")) {
+					reply(out, "354 end with .");
+					String data;
+					while ((data = in.readLine()) != null && !".".equals(data)) {
+						if (data.startsWith("Subject: ")) {
+							subjects.add(data.substring("Subject: ".length()));
+						}
+						// the rest of the message is not kept
+					}
+					recipients.add(recipient);
+					reply(out, "250 OK");
+				} else if (command.equals("QUIT")) {
+					reply(out, "221 bye");
+					return;
+				} else {
+					reply(out, "250 OK");
+				}
+			}
+		} catch (IOException e) {
+			// client went away
+		}
+	}
+
+	private static void reply(Writer out, String line) throws IOException {
+		out.write(line + "\r\n");
+		out.flush();
+	}
+
+}